@@ -0,0 +1,89 @@
+package toc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import toc.contextfree.CFGBuilder;
+import toc.contextfree.ContextFreeGrammar;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the sequential CYK membership test ({@link ContextFreeGrammar#isMember(String)}) against the
+ * parallel one ({@link ContextFreeGrammar#isMember(String, ForkJoinPool)}) on random balanced strings.
+ * The parallel setup checks that both give the same answer.
+ *
+ * @author Jon Bolin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CYKBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Sequential {
+
+        @Param({"500", "1000", "2000", "4000"})
+        public int length;
+
+        ContextFreeGrammar cnf;
+        String s;
+
+        @Setup
+        public void setup() {
+            cnf = balancedGrammar().toChomskyNormalForm();
+            s = Generators.balanced(length, new Random(Generators.SEED));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Parallel {
+
+        @Param({"500", "1000", "2000", "4000"})
+        public int length;
+
+        @Param({"2", "4"})
+        public int threads;
+
+        ContextFreeGrammar cnf;
+        String s;
+        ForkJoinPool pool;
+
+        @Setup
+        public void setup() {
+            cnf = balancedGrammar().toChomskyNormalForm();
+            s = Generators.balanced(length, new Random(Generators.SEED));
+            pool = new ForkJoinPool(threads);
+            if (cnf.isMember(s) != cnf.isMember(s, pool)) {
+                throw new RuntimeException("Sequential and parallel CYK disagree on a string of length " + length);
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public boolean sequential(Sequential sequential) {
+        return sequential.cnf.isMember(sequential.s);
+    }
+
+    @Benchmark
+    public boolean parallel(Parallel parallel) {
+        return parallel.cnf.isMember(parallel.s, parallel.pool);
+    }
+
+    /**
+     * @return The grammar S -> aSb | SS | ab of balanced strings.
+     */
+    private static ContextFreeGrammar balancedGrammar() {
+        CFGBuilder builder = new CFGBuilder('S');
+        builder.addProduction("S", "aSb|SS|ab");
+        return builder.build();
+    }
+
+}
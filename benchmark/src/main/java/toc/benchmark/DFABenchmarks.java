@@ -0,0 +1,65 @@
+package toc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import toc.regular.dfa.DFA;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks running and minimizing random DFAs.
+ *
+ * @author Jon Bolin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DFABenchmarks {
+
+    @State(Scope.Benchmark)
+    public static class Run {
+
+        @Param({"100", "10000"})
+        public int states;
+
+        @Param("10000")
+        public int length;
+
+        DFA dfa;
+        String s;
+
+        @Setup
+        public void setup() {
+            Random random = new Random(Generators.SEED);
+            dfa = Generators.randomDFA(states, 4, random);
+            s = Generators.randomString(length, dfa.Σ, random);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Minimize {
+
+        @Param({"1000", "100000"})
+        public int states;
+
+        DFA dfa;
+
+        @Setup
+        public void setup() {
+            dfa = Generators.randomDFA(states, 4, new Random(Generators.SEED));
+        }
+    }
+
+    @Benchmark
+    public boolean recognizes(Run run) {
+        return run.dfa.recognizes(run.s);
+    }
+
+    @Benchmark
+    public DFA reduceStates(Minimize minimize) {
+        return minimize.dfa.reduceStates();
+    }
+
+}
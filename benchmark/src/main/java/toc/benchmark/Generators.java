@@ -0,0 +1,238 @@
+package toc.benchmark;
+
+import toc.TransitionFunction;
+import toc.contextfree.CFGBuilder;
+import toc.contextfree.ContextFreeGrammar;
+import toc.regular.dfa.DFA;
+import toc.regular.dfa.DFATransitionFunction;
+import toc.regular.nfa.NFA;
+import toc.regular.nfa.NFABuilder;
+
+import java.util.*;
+
+/**
+ * Random inputs for the benchmarks: automata, regular expressions, grammars and strings.
+ * Everything is generated from the given Random, so the same seed gives the same input.
+ *
+ * @author Jon Bolin
+ */
+public class Generators {
+
+    // The seed the benchmarks generate their inputs from, so every run measures the same inputs.
+    public static final long SEED = 42;
+
+    /**
+     * @param k The size of the alphabet, at most 26
+     * @return The alphabet {a, b, ...} with k symbols.
+     */
+    public static Set<Character> alphabet(int k) {
+        Set<Character> Σ = new HashSet<>();
+        for (int a = 0; a < k; a++) Σ.add((char) ('a' + a));
+        return Σ;
+    }
+
+    /**
+     * Creates a random string over an alphabet.
+     * @param n The length of the string
+     * @param Σ The alphabet
+     * @param random The source of randomness
+     * @return A string of n symbols drawn uniformly from Σ.
+     */
+    public static String randomString(int n, Set<Character> Σ, Random random) {
+        Character[] symbols = sorted(Σ);
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) sb.append(symbols[random.nextInt(symbols.length)]);
+        return sb.toString();
+    }
+
+    /**
+     * Creates a random string of balanced a's and b's, with a as the opening symbol.
+     * @param n The length of the string, rounded down to an even number
+     * @param random The source of randomness
+     * @return A string in the language of S -> aSb | SS | ab, or the empty string if n < 2
+     */
+    public static String balanced(int n, Random random) {
+        StringBuilder sb = new StringBuilder(n);
+        int open = n / 2, depth = 0;
+        for (int i = 0; i < n / 2 * 2; i++) {
+            if (open > 0 && (depth == 0 || random.nextBoolean())) {
+                sb.append('a');
+                open--;
+                depth++;
+            } else {
+                sb.append('b');
+                depth--;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates a random DFA where about half of the states are final.
+     * The states come in pairs that recognize the same language, so the minimizers have work to do.
+     * Inaccessible states are dropped, so the result may have slightly fewer than n states.
+     * @param n The number of states
+     * @param k The size of the alphabet
+     * @param random The source of randomness
+     * @return A DFA with at most n states over the alphabet {a, b, ...}
+     */
+    public static DFA randomDFA(int n, int k, Random random) {
+        Set<Character> Σ = alphabet(k);
+        Map<Character, Integer> map = TransitionFunction.createMap(Σ);
+
+        // States 2i and 2i + 1 are equivalent copies of each other.
+        int half = (n + 1) / 2;
+        int[] base = new int[half * k];
+        for (int q = 0; q < half; q++) {
+            for (int a = 0; a < k; a++) base[q * k + a] = random.nextInt(half);
+        }
+        for (int q = 1; q < half; q++) base[random.nextInt(q) * k + random.nextInt(k)] = q;
+        boolean[] baseFinal = new boolean[half];
+        for (int q = 0; q < half; q++) baseFinal[q] = random.nextBoolean();
+
+        int[] table = new int[n * k];
+        for (int q = 0; q < n; q++) {
+            for (int a = 0; a < k; a++) {
+                int next = 2 * base[(q / 2) * k + a] + random.nextInt(2);
+                table[q * k + a] = Math.min(next, n - 1);
+            }
+        }
+
+        // Number the accessible states in breadth first order.
+        int[] number = new int[n];
+        Arrays.fill(number, -1);
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        queue[tail++] = 0;
+        number[0] = 0;
+        while (head < tail) {
+            int q = queue[head++];
+            for (int a = 0; a < k; a++) {
+                int next = table[q * k + a];
+                if (number[next] < 0) {
+                    number[next] = tail;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        int[] accessible = new int[tail * k];
+        Set<Integer> F = new HashSet<>();
+        for (int i = 0; i < tail; i++) {
+            int q = queue[i];
+            for (int a = 0; a < k; a++) accessible[i * k + a] = number[table[q * k + a]];
+            if (baseFinal[q / 2]) F.add(i);
+        }
+        return new DFA(DFATransitionFunction.fromTable(accessible, tail, map), Σ, F);
+    }
+
+    /**
+     * Creates a random NFA. Every state has on average density transitions on each symbol and density / 2
+     * λ transitions, and about a tenth of the states are final.
+     * @param n The number of states
+     * @param k The size of the alphabet
+     * @param density The average number of transitions per state and symbol
+     * @param random The source of randomness
+     * @return An NFA with n states over the alphabet {a, b, ...}
+     */
+    public static NFA randomNFA(int n, int k, double density, Random random) {
+        Set<Character> Σ = alphabet(k);
+        Character[] symbols = sorted(Σ);
+        NFABuilder builder = new NFABuilder(Σ);
+        for (int q = 0; q < n; q++) builder.addState();
+        for (int q = 0; q < n; q++) {
+            for (char a : symbols) {
+                for (int i = poisson(density, random); i > 0; i--) builder.addTransition(q, a, random.nextInt(n));
+            }
+            for (int i = poisson(density / 2, random); i > 0; i--) builder.addλTransition(q, random.nextInt(n));
+            if (random.nextInt(10) == 0) builder.addFinalState(q);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a random regular expression in the syntax of RegularExpression.parse.
+     * @param size The number of symbols from the alphabet in the expression
+     * @param Σ The alphabet
+     * @param random The source of randomness
+     * @return A regular expression with size occurrences of symbols, combined with union, concatenation and star.
+     */
+    public static String randomRegex(int size, Set<Character> Σ, Random random) {
+        StringBuilder sb = new StringBuilder();
+        randomRegex(Math.max(size, 1), sorted(Σ), random, sb);
+        return sb.toString();
+    }
+
+    private static void randomRegex(int size, Character[] symbols, Random random, StringBuilder sb) {
+        if (size == 1) {
+            sb.append(symbols[random.nextInt(symbols.length)]);
+            if (random.nextInt(4) == 0) sb.append('*');
+            return;
+        }
+        int left = 1 + random.nextInt(size - 1);
+        boolean union = random.nextInt(3) == 0;
+        boolean star = random.nextInt(5) == 0;
+        sb.append('(');
+        randomRegex(left, symbols, random, sb);
+        if (union) sb.append('+');
+        randomRegex(size - left, symbols, random, sb);
+        sb.append(')');
+        if (star) sb.append('*');
+    }
+
+    /**
+     * Creates a random context-free grammar with variables S, A, B, ... over the terminals a, b, ...
+     * Every variable has a production with only terminals on the right, so every variable generates a string,
+     * and the other productions mix terminals and variables. About one production in ten is a λ production.
+     * @param variables The number of variables, at most 26
+     * @param productions The number of productions of each variable
+     * @param length The longest right hand side
+     * @param k The number of terminals
+     * @param random The source of randomness
+     * @return A context-free grammar with start variable S.
+     */
+    public static ContextFreeGrammar randomGrammar(int variables, int productions, int length, int k, Random random) {
+        char[] V = new char[variables];
+        V[0] = 'S';
+        for (int i = 1, c = 'A'; i < variables; c++) {
+            if (c != 'S') V[i++] = (char) c;
+        }
+        Character[] T = sorted(alphabet(k));
+        CFGBuilder builder = new CFGBuilder('S');
+        for (char A : V) {
+            for (int p = 0; p < productions; p++) {
+                StringBuilder rhs = new StringBuilder();
+                if (p > 0 && random.nextInt(10) == 0) {
+                    rhs.append('λ');
+                } else {
+                    int n = 1 + random.nextInt(length);
+                    for (int i = 0; i < n; i++) {
+                        boolean terminal = p == 0 || random.nextInt(3) == 0;
+                        rhs.append(terminal ? (char) T[random.nextInt(T.length)] : V[random.nextInt(variables)]);
+                    }
+                }
+                builder.addProduction(String.valueOf(A), rhs.toString());
+            }
+        }
+        List<Character> variableList = new ArrayList<>();
+        for (char A : V) variableList.add(A);
+        builder.setVariables(variableList);
+        return builder.build();
+    }
+
+    private static int poisson(double mean, Random random) {
+        double limit = Math.exp(-mean), p = random.nextDouble();
+        int n = 0;
+        while (p > limit) {
+            p *= random.nextDouble();
+            n++;
+        }
+        return n;
+    }
+
+    private static Character[] sorted(Set<Character> Σ) {
+        Character[] symbols = Σ.toArray(new Character[0]);
+        Arrays.sort(symbols);
+        return symbols;
+    }
+
+}
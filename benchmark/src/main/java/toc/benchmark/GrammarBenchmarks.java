@@ -0,0 +1,119 @@
+package toc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import toc.contextfree.CFGBuilder;
+import toc.contextfree.ContextFreeGrammar;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks normalizing random context-free grammars, and testing and producing the strings of the grammar
+ * S -> aSb | SS | ab of balanced strings.
+ *
+ * @author Jon Bolin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GrammarBenchmarks {
+
+    @State(Scope.Benchmark)
+    public static class Normalize {
+
+        @Param({"4", "8"})
+        public int variables;
+
+        ContextFreeGrammar cfg;
+
+        @Setup
+        public void setup() {
+            cfg = Generators.randomGrammar(variables, 3, 4, 2, new Random(Generators.SEED));
+        }
+    }
+
+    /**
+     * A balanced string, tested with CYK against the grammar in Chomsky normal form.
+     */
+    @State(Scope.Benchmark)
+    public static class CYK {
+
+        @Param({"100", "1000"})
+        public int length;
+
+        ContextFreeGrammar cnf;
+        String s;
+
+        @Setup
+        public void setup() {
+            cnf = balancedGrammar().toChomskyNormalForm();
+            s = Generators.balanced(length, new Random(Generators.SEED));
+        }
+    }
+
+    /**
+     * A balanced string, tested with Earley's parser against the grammar as it is.
+     */
+    @State(Scope.Benchmark)
+    public static class Earley {
+
+        @Param({"1000", "100000"})
+        public int length;
+
+        ContextFreeGrammar cfg;
+        String s;
+
+        @Setup
+        public void setup() {
+            cfg = balancedGrammar();
+            s = Generators.balanced(length, new Random(Generators.SEED));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Produce {
+
+        @Param({"3", "5"})
+        public int depth;
+
+        ContextFreeGrammar cfg;
+
+        @Setup
+        public void setup() {
+            cfg = balancedGrammar();
+        }
+    }
+
+    @Benchmark
+    public ContextFreeGrammar toChomskyNormalForm(Normalize normalize) {
+        return normalize.cfg.toChomskyNormalForm();
+    }
+
+    @Benchmark
+    public boolean isMemberCYK(CYK cyk) {
+        return cyk.cnf.isMember(cyk.s);
+    }
+
+    @Benchmark
+    public boolean isMemberEarley(Earley earley) {
+        return earley.cfg.isMember(earley.s);
+    }
+
+    @Benchmark
+    public ArrayList<String> produce(Produce produce) {
+        return produce.cfg.produce(produce.depth);
+    }
+
+    /**
+     * @return The grammar S -> aSb | SS | ab of balanced strings.
+     */
+    private static ContextFreeGrammar balancedGrammar() {
+        CFGBuilder builder = new CFGBuilder('S');
+        builder.addProduction("S", "aSb|SS|ab");
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,69 @@
+package toc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import toc.regular.dfa.DFA;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares Hopcroft's algorithm ({@link DFA#reduceStates()}) against the table-filling algorithm
+ * ({@link DFA#reduceStatesByTableFilling()}) on random DFAs over 4 symbols.
+ * The table-filling algorithm needs O(n²) memory, so it only runs on the smaller DFAs, whose setup checks that
+ * both algorithms give the same number of states.
+ *
+ * @author Jon Bolin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MinimizationBenchmark {
+
+    private static final int ALPHABET_SIZE = 4;
+
+    @State(Scope.Benchmark)
+    public static class Hopcroft {
+
+        @Param({"1000", "2000", "10000", "100000", "1000000"})
+        public int states;
+
+        DFA dfa;
+
+        @Setup
+        public void setup() {
+            dfa = Generators.randomDFA(states, ALPHABET_SIZE, new Random(Generators.SEED));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class TableFilling {
+
+        @Param({"1000", "2000"})
+        public int states;
+
+        DFA dfa;
+
+        @Setup
+        public void setup() {
+            dfa = Generators.randomDFA(states, ALPHABET_SIZE, new Random(Generators.SEED));
+            int hopcroft = dfa.reduceStates().numStates();
+            int filling = dfa.reduceStatesByTableFilling().numStates();
+            if (hopcroft != filling) {
+                throw new RuntimeException("Minimizers disagree: " + hopcroft + " != " + filling);
+            }
+        }
+    }
+
+    @Benchmark
+    public DFA reduceStates(Hopcroft hopcroft) {
+        return hopcroft.dfa.reduceStates();
+    }
+
+    @Benchmark
+    public DFA reduceStatesByTableFilling(TableFilling tableFilling) {
+        return tableFilling.dfa.reduceStatesByTableFilling();
+    }
+
+}
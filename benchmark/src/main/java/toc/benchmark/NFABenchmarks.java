@@ -0,0 +1,70 @@
+package toc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import toc.regular.dfa.DFA;
+import toc.regular.exp.RegularExpression;
+import toc.regular.nfa.NFA;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks running random NFAs, and converting the NFAs of random regular expressions to DFAs.
+ *
+ * @author Jon Bolin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NFABenchmarks {
+
+    @State(Scope.Benchmark)
+    public static class Run {
+
+        @Param({"10", "100"})
+        public int states;
+
+        @Param("10000")
+        public int length;
+
+        NFA nfa;
+        String s;
+
+        @Setup
+        public void setup() {
+            Random random = new Random(Generators.SEED);
+            nfa = Generators.randomNFA(states, 2, 1.0, random);
+            s = Generators.randomString(length, nfa.Σ, random);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Convert {
+
+        // The number of operators in the regular expression the NFA is built from.
+        @Param({"20", "200"})
+        public int regex;
+
+        NFA nfa;
+
+        @Setup
+        public void setup() {
+            Set<Character> Σ = Generators.alphabet(3);
+            nfa = RegularExpression.parse(Generators.randomRegex(regex, Σ, new Random(Generators.SEED)), Σ).toNFA();
+        }
+    }
+
+    @Benchmark
+    public boolean recognizes(Run run) {
+        return run.nfa.recognizes(run.s);
+    }
+
+    @Benchmark
+    public DFA convertToDFA(Convert convert) {
+        return convert.nfa.convertToDFA();
+    }
+
+}
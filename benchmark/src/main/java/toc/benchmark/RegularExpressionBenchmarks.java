@@ -0,0 +1,49 @@
+package toc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import toc.regular.exp.RegularExpression;
+import toc.regular.nfa.NFA;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing random regular expressions and building their NFAs.
+ *
+ * @author Jon Bolin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegularExpressionBenchmarks {
+
+    // The number of operators in the regular expression.
+    @Param({"100", "10000"})
+    public int regex;
+
+    private Set<Character> Σ;
+    private String pattern;
+    private RegularExpression r;
+
+    @Setup
+    public void setup() {
+        Σ = Generators.alphabet(3);
+        pattern = Generators.randomRegex(regex, Σ, new Random(Generators.SEED));
+        r = RegularExpression.parse(pattern, Σ);
+    }
+
+    @Benchmark
+    public RegularExpression parse() {
+        return RegularExpression.parse(pattern, Σ);
+    }
+
+    @Benchmark
+    public NFA toNFA() {
+        return r.toNFA();
+    }
+
+}
@@ -1,5 +1,11 @@
 package toc;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.*;
 import java.util.Set;
 
 /**
@@ -7,6 +13,9 @@ import java.util.Set;
  */
 public abstract class Acceptor {
 
+    // The number of characters read from a Reader or channel at a time.
+    private static final int CHUNK = 8192;
+
     public final Set<Character> Σ;
 
     public Acceptor(Set<Character> Σ) {
@@ -20,4 +29,133 @@ public abstract class Acceptor {
      */
     public abstract boolean recognizes(String s);
 
+    /**
+     * Tells if the characters read from the reader are in the language recognized by this acceptor.
+     * The reader is read to the end, but not closed.
+     * @param reader The characters to be tested
+     * @return true if the characters are in the language, false otherwise.
+     */
+    public boolean recognizes(Reader reader) throws IOException {
+        return scan().feed(reader).accepts();
+    }
+
+    /**
+     * Tells if the characters decoded from the channel are in the language recognized by this acceptor.
+     * The channel is read to the end, but not closed.
+     * @param channel The bytes to be tested
+     * @param charset The encoding of the bytes
+     * @return true if the characters are in the language, false otherwise.
+     */
+    public boolean recognizes(ReadableByteChannel channel, Charset charset) throws IOException {
+        return scan().feed(channel, charset).accepts();
+    }
+
+    /**
+     * Starts a scan, which is fed the input in pieces.
+     * Acceptors that can't scan in constant memory buffer the input and test it when asked.
+     * @return A scan of the empty string.
+     */
+    public Scan scan() {
+        return new Scan() {
+            private final StringBuilder buffer = new StringBuilder();
+
+            @Override
+            public Scan feed(CharSequence s, int start, int end) {
+                buffer.append(s, start, end);
+                return this;
+            }
+
+            @Override
+            public boolean accepts() {
+                return recognizes(buffer.toString());
+            }
+        };
+    }
+
+    /**
+     * A resumable scan of an input that arrives in pieces. Feeding a scan the pieces of a string one after the
+     * other and then asking whether it accepts is the same as testing the whole string.
+     * A scan isn't safe to feed from several threads at once, and shouldn't be used after feed throws.
+     */
+    public abstract static class Scan {
+
+        /**
+         * Scans the characters s[start..end).
+         * @return This scan.
+         */
+        public abstract Scan feed(CharSequence s, int start, int end);
+
+        /**
+         * @return true if the characters fed so far are in the language.
+         */
+        public abstract boolean accepts();
+
+        /**
+         * Scans all characters of s.
+         * @return This scan.
+         */
+        public Scan feed(CharSequence s) {
+            return feed(s, 0, s.length());
+        }
+
+        /**
+         * Scans the remaining characters of the buffer, leaving its position at its limit.
+         * @return This scan.
+         */
+        public Scan feed(CharBuffer buffer) {
+            feed(buffer, 0, buffer.remaining());
+            buffer.position(buffer.limit());
+            return this;
+        }
+
+        /**
+         * Scans the characters read from the reader until it ends. The reader is not closed.
+         * @return This scan.
+         */
+        public Scan feed(Reader reader) throws IOException {
+            CharBuffer buffer = CharBuffer.allocate(CHUNK);
+            while (reader.read(buffer) >= 0) {
+                buffer.flip();
+                feed(buffer);
+                buffer.clear();
+            }
+            return this;
+        }
+
+        /**
+         * Scans the characters decoded from the channel until it ends. The channel is not closed.
+         * @param charset The encoding of the bytes
+         * @return This scan.
+         */
+        public Scan feed(ReadableByteChannel channel, Charset charset) throws IOException {
+            CharsetDecoder decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            ByteBuffer bytes = ByteBuffer.allocate(CHUNK);
+            CharBuffer chars = CharBuffer.allocate(CHUNK);
+            boolean end;
+            do {
+                end = channel.read(bytes) < 0;
+                bytes.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(bytes, chars, end);
+                    if (result.isError()) result.throwException();
+                    chars.flip();
+                    feed(chars);
+                    chars.clear();
+                } while (result.isOverflow());
+                bytes.compact();
+            } while (!end);
+            CoderResult result;
+            do {
+                result = decoder.flush(chars);
+                chars.flip();
+                feed(chars);
+                chars.clear();
+            } while (result.isOverflow());
+            return this;
+        }
+    }
+
 }
@@ -0,0 +1,71 @@
+package toc;
+
+import java.util.Arrays;
+
+/**
+ * Tarjan's algorithm for the strongly connected components of a directed graph.
+ *
+ * @author Jon Bolin
+ */
+public class StronglyConnectedComponents {
+
+    /**
+     * Labels each vertex with its strongly connected component.
+     * The search is iterative, so long chains of vertices don't overflow the call stack.
+     * @param adjacency adjacency[v] lists the successors of vertex v.
+     * @return The component of each vertex. Components are numbered in reverse topological order,
+     *         i.e. for every edge u -> v, component[u] >= component[v].
+     */
+    public static int[] label(int[][] adjacency) {
+        int n = adjacency.length;
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] component = new int[n];
+        Arrays.fill(index, -1);
+        Arrays.fill(component, -1);
+
+        int[] stack = new int[n];
+        int[] calls = new int[n];
+        int[] edge = new int[n];
+        int top = 0, numCalls = 0, counter = 0, numComponents = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) continue;
+            index[root] = low[root] = counter++;
+            stack[top++] = root;
+            calls[numCalls++] = root;
+            while (numCalls > 0) {
+                int v = calls[numCalls - 1];
+                if (edge[v] < adjacency[v].length) {
+                    int w = adjacency[v][edge[v]++];
+                    if (index[w] < 0) {
+                        // Visit w
+                        index[w] = low[w] = counter++;
+                        stack[top++] = w;
+                        calls[numCalls++] = w;
+                    } else if (component[w] < 0) {
+                        // w is on the stack, so it's in the current component
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                } else {
+                    numCalls--;
+                    if (low[v] == index[v]) {
+                        // v is the root of a component
+                        int w;
+                        do {
+                            w = stack[--top];
+                            component[w] = numComponents;
+                        } while (w != v);
+                        numComponents++;
+                    }
+                    if (numCalls > 0) {
+                        int u = calls[numCalls - 1];
+                        low[u] = Math.min(low[u], low[v]);
+                    }
+                }
+            }
+        }
+        return component;
+    }
+
+}
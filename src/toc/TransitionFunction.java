@@ -17,6 +17,20 @@ public abstract class TransitionFunction {
         return Collections.unmodifiableMap(map);
     }
 
+    /**
+     * Creates a lookup array from characters to their alphabet index.
+     * @param map The mapping Σ -> {0, 1, ..., |Σ| - 1}
+     * @return An array where index[c] is map.get(c), or -1 if c is not in the alphabet.
+     */
+    public static int[] createIndex(Map<Character, Integer> map) {
+        int size = 0;
+        for (char c : map.keySet()) size = Math.max(size, c + 1);
+        int[] index = new int[size];
+        Arrays.fill(index, -1);
+        for (Map.Entry<Character, Integer> e : map.entrySet()) index[e.getKey()] = e.getValue();
+        return index;
+    }
+
     public Map<Character, Integer> map;
 
     public TransitionFunction(Set<Character> Σ) {
@@ -0,0 +1,277 @@
+package toc.contextfree;
+
+import toc.grammar.GrammarIndex;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The CYK membership test for a grammar in Chomsky normal form, compiled to dense integer tables.
+ * Variables are numbered as in the grammar's GrammarIndex, binary productions are indexed by the first variable
+ * of their right hand side, and each cell of the table is a bitset of variables stored in a long[].
+ * Only the upper triangle of the table is stored.
+ *
+ * @author Jon Bolin
+ */
+class CYKParser {
+
+    // The number of cells on a diagonal that are filled together.
+    private static final int BLOCK = 1024;
+
+    // Diagonals with at most GRAIN split points in total are filled without forking.
+    // Otherwise a diagonal is split into one piece per thread, but no smaller than MIN_CELLS cells:
+    // every piece reads its own short run of each shorter diagonal, and short runs are slow to read.
+    private static final int GRAIN = 1 << 16;
+    private static final int MIN_CELLS = 64;
+
+    // The largest array most JVMs will allocate.
+    private static final long MAX_TABLE = Integer.MAX_VALUE - 8;
+
+    private final int words;
+
+    // terminals[a] is the set of variables A with A -> a, or null if there are none.
+    private final long[][] terminals;
+
+    // For each production A -> BC, C is in rights[B], and A is in the set heads[B][j] where rights[B][j] = C.
+    private final int[][] rights;
+    private final long[][][] heads;
+
+    // The same productions when there are at most 64 variables: rightMask[B] is the set rights[B],
+    // and heads1[B][j] is the single word of heads[B][j].
+    private final long[] rightMask;
+    private final long[][] heads1;
+
+    CYKParser(ContextFreeGrammar cfg) {
+        GrammarIndex g = cfg.index();
+        int numVariables = g.numVariables();
+        this.words = (numVariables + 63) >>> 6;
+
+        // Index the productions.
+        int maxTerminal = -1;
+        for (int x = numVariables; x < g.numSymbols(); x++) maxTerminal = Math.max(maxTerminal, g.symbol(x));
+        this.terminals = new long[maxTerminal + 1][];
+        List<Map<Integer, long[]>> binary = new ArrayList<>();
+        for (int i = 0; i < numVariables; i++) binary.add(new TreeMap<>());
+        for (int p = 0; p < g.numProductions(); p++) {
+            int A = g.lhs(p);
+            if (g.length(p) == 1) {
+                char a = g.symbol(g.symbol(p, 0));
+                if (terminals[a] == null) terminals[a] = new long[words];
+                terminals[a][A >>> 6] |= 1L << A;
+            } else if (g.length(p) == 2) {
+                int B = g.symbol(p, 0);
+                int C = g.symbol(p, 1);
+                binary.get(B).computeIfAbsent(C, (c) -> new long[words])[A >>> 6] |= 1L << A;
+            }
+        }
+        this.rights = new int[numVariables][];
+        this.heads = new long[numVariables][][];
+        for (int B = 0; B < numVariables; B++) {
+            Map<Integer, long[]> map = binary.get(B);
+            rights[B] = new int[map.size()];
+            heads[B] = new long[map.size()][];
+            int j = 0;
+            for (Map.Entry<Integer, long[]> e : map.entrySet()) {
+                rights[B][j] = e.getKey();
+                heads[B][j++] = e.getValue();
+            }
+        }
+        if (words == 1) {
+            this.rightMask = new long[numVariables];
+            this.heads1 = new long[numVariables][];
+            for (int B = 0; B < numVariables; B++) {
+                heads1[B] = new long[rights[B].length];
+                for (int j = 0; j < rights[B].length; j++) {
+                    rightMask[B] |= 1L << rights[B][j];
+                    heads1[B][j] = heads[B][j][0];
+                }
+            }
+        } else {
+            this.rightMask = null;
+            this.heads1 = null;
+        }
+    }
+
+    /**
+     * Tests if the grammar generates the string.
+     * @param s The string to test
+     * @return true if S derives s. A grammar in CNF never derives the empty string.
+     */
+    boolean recognizes(String s) {
+        int n = s.length();
+        long[] table = initialize(s);
+        if (table == null) return false;
+        for (int length = 1; length < n; length++) {
+            fillDiagonal(table, n, length, 0, n - length);
+        }
+        return accepts(table, n);
+    }
+
+    /**
+     * Tests if the grammar generates the string, filling the cells of each diagonal in parallel.
+     * The cells on a diagonal only depend on shorter diagonals, so each diagonal is split into about one
+     * task per thread, and the next diagonal starts when they have all finished.
+     * @param s The string to test
+     * @param pool The pool to run the tasks in
+     * @return true if S derives s.
+     */
+    boolean recognizes(String s, ForkJoinPool pool) {
+        int n = s.length();
+        long[] table = initialize(s);
+        if (table == null) return false;
+        int threads = pool.getParallelism();
+        for (int length = 1; length < n; length++) {
+            int cells = n - length;
+            if (threads == 1 || (long) cells * length <= GRAIN) {
+                fillDiagonal(table, n, length, 0, cells);
+            } else {
+                int piece = Math.max(MIN_CELLS, (cells + threads - 1) / threads);
+                pool.invoke(new Diagonal(table, n, length, 0, cells, piece));
+            }
+        }
+        return accepts(table, n);
+    }
+
+    /**
+     * Fills the cells (i, i + length) for i in [from, to) by splitting the range in half until the pieces
+     * have at most piece cells.
+     */
+    @SuppressWarnings("serial")
+    private class Diagonal extends RecursiveAction {
+
+        private final long[] table;
+        private final int n, length, from, to, piece;
+
+        Diagonal(long[] table, int n, int length, int from, int to, int piece) {
+            this.table = table;
+            this.n = n;
+            this.length = length;
+            this.from = from;
+            this.to = to;
+            this.piece = piece;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= piece) {
+                fillDiagonal(table, n, length, from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Diagonal(table, n, length, from, mid, piece),
+                        new Diagonal(table, n, length, mid, to, piece));
+            }
+        }
+    }
+
+    /**
+     * Creates the table for s and fills in the cells for the single characters.
+     * @return The table, or null if s is empty or contains a character that no variable derives.
+     */
+    private long[] initialize(String s) {
+        int n = s.length();
+        if (n == 0) return null;
+
+        // Cell (i, j) is the set of variables deriving s[i..j].
+        long size = (long) n * (n + 1) / 2 * words;
+        if (size > MAX_TABLE) {
+            throw new RuntimeException("String too long to parse: " + n + " characters need " + size + " table words.");
+        }
+        long[] table = new long[(int) size];
+        for (int i = 0; i < n; i++) {
+            char a = s.charAt(i);
+            if (a >= terminals.length || terminals[a] == null) return null;
+            System.arraycopy(terminals[a], 0, table, cell(n, i, i) * words, words);
+        }
+        return table;
+    }
+
+    private boolean accepts(long[] table, int n) {
+        int root = cell(n, 0, n - 1) * words;
+        // The start variable is variable 0.
+        return (table[root] & 1L) != 0;
+    }
+
+    /**
+     * Fills the cells (i, i + length) for i in [from, to). Each cell only depends on shorter diagonals.
+     * The cells are filled a block at a time, one split point offset m at a time: the left parts (i, i + m),
+     * the right parts (i + m + 1, i + length) and the cells themselves are each consecutive on their diagonals,
+     * so the table is read sequentially.
+     */
+    private void fillDiagonal(long[] table, int n, int length, int from, int to) {
+        for (int block = from; block < to; block += BLOCK) {
+            int end = Math.min(block + BLOCK, to);
+            for (int m = 0; m < length; m++) {
+                int left = cell(n, block, block + m) * words;
+                int right = cell(n, block + m + 1, block + length) * words;
+                int out = cell(n, block, block + length) * words;
+                if (words == 1) {
+                    for (int i = block; i < end; i++) {
+                        long l = table[left++], r = table[right++];
+                        if (l != 0 && r != 0) table[out] |= combine(l, r);
+                        out++;
+                    }
+                } else {
+                    for (int i = block; i < end; i++, left += words, right += words, out += words) {
+                        if (!isEmpty(table, right)) combine(table, left, right, out);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The set of A with a production A -> BC, B in l and C in r, when there are at most 64 variables.
+     */
+    private long combine(long l, long r) {
+        long result = 0;
+        while (l != 0) {
+            int B = Long.numberOfTrailingZeros(l);
+            l &= l - 1;
+            if ((r & rightMask[B]) == 0) continue;
+            int[] cs = rights[B];
+            for (int t = 0; t < cs.length; t++) {
+                if ((r & (1L << cs[t])) != 0) result |= heads1[B][t];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds A to the cell at out for every production A -> BC with B in the cell at left and C in the cell at right.
+     */
+    private void combine(long[] table, int left, int right, int out) {
+        for (int w = 0; w < words; w++) {
+            long bits = table[left + w];
+            while (bits != 0) {
+                int B = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int[] cs = rights[B];
+                for (int t = 0; t < cs.length; t++) {
+                    int C = cs[t];
+                    if ((table[right + (C >>> 6)] & (1L << C)) != 0) {
+                        long[] h = heads[B][t];
+                        for (int x = 0; x < words; x++) table[out + x] |= h[x];
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isEmpty(long[] table, int cell) {
+        for (int w = 0; w < words; w++) {
+            if (table[cell + w] != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The index of cell (i, j) in the upper triangle, stored one diagonal j - i at a time.
+     * d * n can overflow an int even when the index doesn't, so it is computed in long.
+     */
+    private static int cell(int n, int i, int j) {
+        long d = j - i;
+        return (int) (d * n - d * (d - 1) / 2 + i);
+    }
+
+}
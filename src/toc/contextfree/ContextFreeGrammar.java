@@ -1,16 +1,25 @@
 package toc.contextfree;
 
+import toc.StronglyConnectedComponents;
 import toc.grammar.Grammar;
+import toc.grammar.GrammarIndex;
 import toc.grammar.Production;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author Jon Bolin
  */
 public class ContextFreeGrammar extends Grammar {
 
+    // The most nullable occurrences in a right hand side that removeLambdaProductions expands directly.
+    private static final int MAX_NULLABLE = 4;
+
     private boolean inCNF;
+    private GrammarIndex index;
+    private CYKParser cyk;
+    private EarleyParser earley;
 
     public ContextFreeGrammar(Set<Character> T, Set<Character> V, Set<Production> P, Character S) {
         super(T, V, P, S);
@@ -29,80 +38,19 @@ public class ContextFreeGrammar extends Grammar {
      * Create a new CFG with all useless productions removed.
      * A useless production contains a useless variable.
      * A useless variable is never used in the production of a word in the language.
-     * @return
+     * @return An equivalent CFG with only the variables that are reachable from S and generate a string.
      */
     public ContextFreeGrammar removeUselessProductions() {
+        GrammarIndex g = index();
         Set<Character> V1 = new HashSet<>();
-        boolean added = true;
-        while (added) {
-            added = false;
-            for (Production p : P) {
-                char v = p.LHS.charAt(0);
-                if (V1.contains(v)) continue;
-                boolean addToV1 = true;
-                for (char c : p.RHS.toCharArray()) {
-                    if (!T.contains(c) && !V1.contains(c)) {
-                        addToV1 = false;
-                        break;
-                    }
-                }
-                if (addToV1) {
-                    V1.add(v);
-                    added = true;
-                }
-            }
+        for (int A = 0; A < g.numVariables(); A++) {
+            if (g.isReachable(A)) V1.add(g.symbol(A));
         }
         Set<Production> P1 = new HashSet<>();
-        for (Production p : P) {
-            if (!V1.contains(p.LHS.charAt(0))) continue;
-            boolean addToP1 = true;
-            for (char c : p.RHS.toCharArray()) {
-                if (!T.contains(c) && !V1.contains(c)) {
-                    addToP1 = false;
-                    break;
-                }
-            }
-            if (addToP1) P1.add(p);
+        for (int p = 0; p < g.numProductions(); p++) {
+            if (g.isUseful(p)) P1.add(g.production(p));
         }
-
-        // Create the dependency graph in V1 and remove any nodes unreachable from S.
-        HashMap<Character, ArrayList<Character>> adjlist = new HashMap<>();
-        for (char c : V1) {
-            adjlist.put(c, new ArrayList<>());
-        }
-        for (Production p : P1) {
-            ArrayList<Character> curr = adjlist.get(p.LHS.charAt(0));
-            for (char c : p.RHS.toCharArray()) {
-                if (V1.contains(c)) curr.add(c);
-            }
-        }
-
-        // Add nodes reachable from S
-        Set<Character> V2 = new HashSet<>();
-        Stack<Character> s = new Stack<>();
-        s.push(S);
-        while (!s.isEmpty()) {
-            char curr = s.pop();
-            if (V2.contains(curr)) continue;
-            V2.add(curr);
-            for (char c : adjlist.get(curr)) {
-                s.push(c);
-            }
-        }
-        Set<Production> P2 = new HashSet<>();
-        for (Production p : P) {
-            if (!V2.contains(p.LHS.charAt(0))) continue;
-            boolean addToP2 = true;
-            for (char c : p.RHS.toCharArray()) {
-                if (!T.contains(c) && !V2.contains(c)) {
-                    addToP2 = false;
-                    break;
-                }
-            }
-            if (addToP2) P2.add(p);
-        }
-
-        return new ContextFreeGrammar(T, V2, P2, S);
+        return new ContextFreeGrammar(T, V1, P1, S);
     }
 
     /**
@@ -122,103 +70,140 @@ public class ContextFreeGrammar extends Grammar {
 
     /**
      * Produce a new context-free grammar with no lambda productions.
+     * Every production is replaced by its variants with each occurrence of a nullable variable either kept or
+     * dropped. A right hand side with more than MAX_NULLABLE nullable occurrences is first split into a chain of
+     * productions through new variables, each with at most MAX_NULLABLE of them, so the result grows linearly
+     * with the grammar instead of exponentially.
+     * @return An equivalent CFG without the empty string.
      */
     public ContextFreeGrammar removeLambdaProductions() {
-        Set<Character> Vn = new HashSet<>();
-        boolean added = true;
-        while (added) {
-            added = false;
-            for (Production p : P) {
-                boolean addToVn = true;
-                for (char c : p.RHS.toCharArray()) {
-                    if (T.contains(c) || !Vn.contains(c)) {
-                        addToVn = false;
-                        break;
-                    }
-                }
-                if (addToVn && !Vn.contains(p.LHS.charAt(0))) {
-                    added = true;
-                    Vn.add(p.LHS.charAt(0));
-                }
-            }
-        }
+        GrammarIndex g = index();
+        Set<Character> V1 = new HashSet<>(V);
+        Set<Character> taken = new HashSet<>(V);
+        taken.addAll(T);
         Set<Production> P1 = new HashSet<>();
-        for (Production p : P) {
-            ArrayList<Character> nullable = new ArrayList<>();
-            for (char c : p.RHS.toCharArray()) {
-                if (Vn.contains(c) && !nullable.contains(c)) nullable.add(c);
+        char v = 'A';
+        for (int p = 0; p < g.numProductions(); p++) {
+            String rhs = g.production(p).RHS;
+            int[] nullable = new int[rhs.length()];
+            int count = 0;
+            for (int i = 0; i < rhs.length(); i++) {
+                if (isNullable(g, g.symbol(p, i))) nullable[count++] = i;
             }
-            // Try each possible combination of removing nullable variables.
-            for (long i = 0; i < (1L << nullable.size()); i++) {
-                Set<Character> remove = new HashSet<>();
-                for (int j = 0; j <= nullable.size(); j ++) {
-                    if ((i & (1 << j)) != 0) {
-                        remove.add(nullable.get(j));
-                    }
-                }
-                String rhs = p.RHS;
-                for (char c : remove) {
-                    rhs = rhs.replaceAll(String.valueOf(c), "");
-                }
-                if (rhs.length() > 0) {
-                    P1.add(new Production(p.LHS, rhs));
-                }
+            // Split off suffixes until at most MAX_NULLABLE nullable occurrences are left.
+            String lhs = g.production(p).LHS;
+            int from = 0, first = 0;
+            while (count - first > MAX_NULLABLE) {
+                int cut = nullable[first + MAX_NULLABLE - 2] + 1;
+                v = freeVariable(v, taken);
+                taken.add(v);
+                V1.add(v);
+                boolean suffixNullable = true;
+                for (int i = cut; i < rhs.length() && suffixNullable; i++) suffixNullable = isNullable(g, g.symbol(p, i));
+                int[] occurrences = Arrays.copyOfRange(nullable, first, first + MAX_NULLABLE);
+                occurrences[MAX_NULLABLE - 1] = cut;
+                expand(lhs, rhs.substring(from, cut) + v, occurrences, suffixNullable ? MAX_NULLABLE : MAX_NULLABLE - 1,
+                        from, P1);
+                lhs = String.valueOf(v);
+                from = cut;
+                first += MAX_NULLABLE - 1;
             }
-            if (p.RHS.length() > 0) {
-                P1.add(p);
+            expand(lhs, rhs.substring(from), Arrays.copyOfRange(nullable, first, count), count - first, from, P1);
+        }
+        return new ContextFreeGrammar(T, V1, P1, S);
+    }
+
+    private static boolean isNullable(GrammarIndex g, int x) {
+        return g.isVariable(x) && g.isNullable(x);
+    }
+
+    /**
+     * Adds lhs -> rhs with every combination of the nullable occurrences dropped, except the empty one.
+     * @param occurrences The positions of the nullable occurrences, offset by shift
+     * @param count The number of nullable occurrences
+     * @param shift The offset of rhs in the positions
+     */
+    private static void expand(String lhs, String rhs, int[] occurrences, int count, int shift, Set<Production> P1) {
+        StringBuilder sb = new StringBuilder(rhs.length());
+        for (int drop = 0; drop < (1 << count); drop++) {
+            sb.setLength(0);
+            int last = 0;
+            for (int j = 0; j < count; j++) {
+                int i = occurrences[j] - shift;
+                sb.append(rhs, last, i);
+                if ((drop & (1 << j)) == 0) sb.append(rhs.charAt(i));
+                last = i + 1;
             }
+            sb.append(rhs, last, rhs.length());
+            if (sb.length() > 0) P1.add(new Production(lhs, sb.toString()));
         }
-        return new ContextFreeGrammar(T, V, P1, S);
+    }
+
+    /**
+     * @return The first character from v on that isn't taken and can be used as a variable.
+     */
+    static char freeVariable(char v, Set<Character> taken) {
+        while (v < Character.MAX_VALUE && (taken.contains(v) || v == 'λ' || v == '|')) v++;
+        if (taken.contains(v)) throw new RuntimeException("Out of variable names.");
+        return v;
     }
 
     /**
      * Create a new ContextFreeGrammar without any unit productions.
-     * @return
+     * The λ productions are removed first. A variable then gets every non-unit production of every variable it
+     * reaches through unit productions. Variables in the same strongly connected component of the unit graph
+     * reach the same variables, so the components are handled once each, in topological order, and each one
+     * collects the productions of the components below it.
+     * @return An equivalent CFG without the empty string, and without unit productions.
      */
     public ContextFreeGrammar removeUnitProductions() {
         ContextFreeGrammar res = removeLambdaProductions();
-        // Create the dependency graph in V1 and remove any nodes unreachable from S.
-        HashMap<Character, Set<Character>> adjlist = new HashMap<>();
-        for (char c : res.V) {
-            adjlist.put(c, new HashSet<>());
-        }
-        for (Production p : res.P) {
-            if (p.RHS.length() == 1 && res.V.contains(p.RHS.charAt(0))) {
-                adjlist.get(p.LHS.charAt(0)).add(p.RHS.charAt(0));
-            }
-        }
+        GrammarIndex g = res.index();
+        int n = g.numVariables();
 
-        // Add non-unit productions to the set.
-        Set<Production> P1 = new HashSet<>();
-        for (Production p : res.P) {
-            if (p.RHS.length() != 1 || res.T.contains(p.RHS.charAt(0))) {
-                P1.add(p);
+        // adjacency[A] are the variables B with a unit production A -> B.
+        int[][] adjacency = new int[n][];
+        int[] targets = new int[g.numProductions()];
+        for (int A = 0; A < n; A++) {
+            int size = 0;
+            for (int p = g.firstProduction(A); p < g.firstProduction(A + 1); p++) {
+                if (isUnit(g, p) && g.symbol(p, 0) != A) targets[size++] = g.symbol(p, 0);
             }
+            adjacency[A] = Arrays.copyOf(targets, size);
         }
 
-        // Create new productions that aren't reliant on unit productions.
-        // DFS in adjacency graph to find all chains of A -> B, B -> C, etc
-        Stack<Character> stack = new Stack<>();
-        for (char v : res.V) {
-            Set<Character> visited = new HashSet<>();
-            for (char c : adjlist.get(v)) {
-                stack.push(c);
-            }
-            while (!stack.isEmpty()) {
-                char curr = stack.pop();
-                if (visited.contains(curr)) continue;
-                visited.add(curr);
-                Set<Production> tmp = new HashSet<>();
-                for (Production p : P1) {
-                    if (p.LHS.charAt(0) == curr) {
-                        tmp.add(new Production(String.valueOf(v), p.RHS));
-                    }
+        // Components are numbered in reverse topological order, so the ones a component reaches come first.
+        int[] component = StronglyConnectedComponents.label(adjacency);
+        int numComponents = 0;
+        for (int c : component) numComponents = Math.max(numComponents, c + 1);
+        List<List<Integer>> members = new ArrayList<>(numComponents);
+        for (int c = 0; c < numComponents; c++) members.add(new ArrayList<>());
+        for (int A = 0; A < n; A++) members.get(component[A]).add(A);
+
+        List<Set<String>> reached = new ArrayList<>(numComponents);
+        for (int c = 0; c < numComponents; c++) {
+            Set<String> own = new LinkedHashSet<>();
+            for (int A : members.get(c)) {
+                for (int p = g.firstProduction(A); p < g.firstProduction(A + 1); p++) {
+                    if (!isUnit(g, p)) own.add(g.production(p).RHS);
+                }
+                for (int B : adjacency[A]) {
+                    if (component[B] != c) own.addAll(reached.get(component[B]));
                 }
-                P1.addAll(tmp);
-                adjlist.get(curr).forEach(stack::push);
             }
+            reached.add(own);
         }
-        return new ContextFreeGrammar(T, V, P1, S);
+
+        Set<Production> P1 = new HashSet<>();
+        for (int A = 0; A < n; A++) {
+            String lhs = String.valueOf(g.symbol(A));
+            for (String r : reached.get(component[A])) P1.add(new Production(lhs, r));
+        }
+        return new ContextFreeGrammar(T, res.V, P1, S);
+    }
+
+    private static boolean isUnit(GrammarIndex g, int p) {
+        return g.length(p) == 1 && g.isVariable(g.symbol(p, 0));
     }
 
     /**
@@ -230,79 +215,111 @@ public class ContextFreeGrammar extends Grammar {
         if (inCNF) return this;
         // Remove lambda and unit productions
         ContextFreeGrammar cfg = removeUnitProductions();
-        System.out.println(cfg);
-        CFGBuilder builder = new CFGBuilder(cfg.S);
-        HashMap<Character, Character> termVariables = new HashMap<>();
+        GrammarIndex g = cfg.index();
+        Set<Production> P1 = new HashSet<>();
+        Set<Character> taken = new HashSet<>(cfg.V);
+        taken.addAll(cfg.T);
+        // name[x] is the variable standing for symbol x on a right hand side of length 2.
+        char[] name = new char[g.numSymbols()];
         // The current variable.
         char v = 'A';
-        for (char t : cfg.T) {
-            // Create a new variable for each terminal symbol, with production A -> a
-            while (v < Character.MAX_VALUE && (cfg.T.contains(v) || cfg.V.contains(v) || termVariables.containsValue(v))) v++;
-            termVariables.put(t, v);
-            builder.addProduction(String.valueOf(v), String.valueOf(t));
+        for (int x = 0; x < g.numSymbols(); x++) {
+            if (g.isVariable(x)) {
+                name[x] = g.symbol(x);
+            } else {
+                // Create a new variable for each terminal symbol, with production A -> a
+                v = freeVariable(v, taken);
+                taken.add(v);
+                name[x] = v;
+                P1.add(new Production(String.valueOf(v), String.valueOf(g.symbol(x))));
+            }
         }
 
-        // Add all productions of length 1
-        for (Production p : cfg.P) {
-            if (p.RHS.length() == 1) {
-                // Add if length 1... A -> a
-                builder.addProduction(p.LHS, p.RHS);
-            } else {
-                String rhs = p.RHS;
-                char lastV = p.LHS.charAt(0);
-                for (int i = 0; i < rhs.length() - 2; i++) {
-                    // Find the next unused variable name
-                    while (v < Character.MAX_VALUE && (cfg.T.contains(v) || cfg.V.contains(v) || termVariables.containsValue(v)))
-                        v++;
-                    char curr = rhs.charAt(i);
-                    builder.addProduction("" + lastV, (T.contains(curr) ? termVariables.get(curr) : curr) + "" + v);
-                    lastV = v++;
-                }
-                System.out.println(p);
-                String sub = p.RHS.substring(p.RHS.length() - 2);
-                if (T.contains(sub.charAt(0))) sub = sub.replace(sub.charAt(0), termVariables.get(sub.charAt(0)));
-                if (T.contains(sub.charAt(1))) sub = sub.replace(sub.charAt(1), termVariables.get(sub.charAt(1)));
-                builder.addProduction("" + lastV, sub);
+        for (int p = 0; p < g.numProductions(); p++) {
+            int length = g.length(p);
+            if (length == 1) {
+                // After removing unit productions, this is A -> a
+                P1.add(g.production(p));
+                continue;
+            }
+            // A -> X1 X2 ... Xn becomes A -> X1 A1, A1 -> X2 A2, ..., An-2 -> Xn-1 Xn
+            char lastV = g.symbol(g.lhs(p));
+            for (int i = 0; i < length - 2; i++) {
+                v = freeVariable(v, taken);
+                taken.add(v);
+                P1.add(new Production(String.valueOf(lastV), "" + name[g.symbol(p, i)] + v));
+                lastV = v;
             }
+            P1.add(new Production(String.valueOf(lastV), "" + name[g.symbol(p, length - 2)] + name[g.symbol(p, length - 1)]));
         }
-        ContextFreeGrammar g = builder.build();
-        g.inCNF = true;
-        return g;
+        taken.removeAll(cfg.T);
+        ContextFreeGrammar cnf = new ContextFreeGrammar(cfg.T, taken, P1, S);
+        cnf.inCNF = true;
+        return cnf;
     }
 
     /**
-     * Tests if the given string can be generated by this grammar using the CYK algorithm.
-     * @param s
-     * @return
+     * Builds an NPDA that accepts the language of this grammar by leftmost derivations. It pushes S on a new stack
+     * start symbol z, then either replaces the variable on top of the stack with the right hand side of one of its
+     * productions, or pops a terminal that matches the next input symbol. Once z is back on top the whole input
+     * has been derived. The standard construction accepts by empty stack with a single state; accepting by final
+     * state takes a state to push S and a final state to move to from z.
+     * @return An NPDA with three states that accepts the language of this grammar.
+     */
+    public NPDA toNPDA() {
+        Set<Character> Γ = new HashSet<>(V);
+        Γ.addAll(T);
+        char z = freeVariable('z', Γ);
+        Γ.add(z);
+        PDABuilder b = new PDABuilder(T, Γ, z);
+        int q0 = b.addState(), q1 = b.addState(), q2 = b.addState();
+        b.addλTransition(q0, z, q1, "" + S + z);
+        for (Production p : P) b.addλTransition(q1, p.LHS.charAt(0), q1, p.RHS);
+        for (char a : T) b.addTransition(q1, a, a, q1, "");
+        b.addλTransition(q1, z, q2, String.valueOf(z));
+        b.addFinalState(q2);
+        return b.build();
+    }
+
+    /**
+     * Tests if the given string can be generated by this grammar.
+     * Grammars in CNF use the CYK algorithm, and any other grammar uses Earley's algorithm, so there is
+     * no need to convert to CNF first. The parser is compiled the first time this is called.
+     * @param s The string to test
+     * @return true if s is in the language of the grammar.
      */
     public boolean isMember(String s) {
+        if (!inCNF) return earley().recognizes(s);
+        return cyk().recognizes(s);
+    }
+
+    /**
+     * Tests if the given string can be generated by this grammar using the CYK algorithm,
+     * filling the cells of each diagonal of the table in parallel.
+     * @param s The string to test
+     * @param pool The pool to fill the table in
+     * @return true if s is in the language of the grammar.
+     */
+    public boolean isMember(String s, ForkJoinPool pool) {
         if (!inCNF) throw new RuntimeException("Convert to CNF before checking membership.");
-        Set<Character>[][] v = (Set<Character>[][]) new Set[s.length()][s.length()];
-        for (int length = 0; length < s.length(); length++) {
-            for (int i = 0; i < s.length() - length; i++) {
-                v[i][i+length] = new HashSet<>();
-                if (length == 0) {
-                    // Add unit productions resulting in the current character.
-                    for (Production p : P) {
-                        if (p.RHS.charAt(0) == s.charAt(i)) {
-                            v[i][i+length].add(p.LHS.charAt(0));
-                        }
-                    }
-                } else {
-                    for (Production p : P) {
-                        if (p.RHS.length() < 2) continue;
-                        char l = p.RHS.charAt(0);
-                        char r = p.RHS.charAt(1);
-                        for (int k = i; k < i+length; k++) {
-                            if (v[i][k].contains(l) && v[k+1][i+length].contains(r)) {
-                                v[i][i+length].add(p.LHS.charAt(0));
-                                break;
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        return v[0][s.length() - 1].contains(S);
+        return cyk().recognizes(s, pool);
+    }
+
+    /**
+     * @return The grammar compiled to integer arrays, which the simplifications and parsers work on.
+     */
+    public synchronized GrammarIndex index() {
+        if (index == null) index = new GrammarIndex(this);
+        return index;
+    }
+
+    private synchronized CYKParser cyk() {
+        if (cyk == null) cyk = new CYKParser(this);
+        return cyk;
+    }
+
+    private synchronized EarleyParser earley() {
+        if (earley == null) earley = new EarleyParser(this);
+        return earley;
     }
 }
@@ -0,0 +1,330 @@
+package toc.contextfree;
+
+import toc.grammar.GrammarIndex;
+
+import java.util.*;
+
+/**
+ * Earley's algorithm for the membership test on an arbitrary context-free grammar.
+ * Nullable variables are handled as described by Aycock and Horspool: predicting a nullable variable also
+ * moves the dot past it, so items never complete in the set they were predicted in.
+ * Completions along right recursive chains use Leo's optimization and only add the topmost item,
+ * which makes the parser linear on LR-regular grammars. It is cubic in the worst case.
+ *
+ * The grammar is compiled to integer tables: variables are numbered as in the grammar's GrammarIndex, a terminal a
+ * is the symbol -(a + 1), and the dotted rules of every production are numbered consecutively.
+ *
+ * @author Jon Bolin
+ */
+class EarleyParser {
+
+    // The symbol after the dot of a completed item.
+    private static final int END = Integer.MIN_VALUE;
+
+    // Leo memo values, besides items packed with their origin.
+    private static final long UNKNOWN = -1, NONE = -2, VISITING = -3;
+
+    private final int numVariables;
+    private final boolean[] nullable;
+
+    // productions[A] are the items with the dot at the start of the productions of A.
+    private final int[][] productions;
+
+    // For every item: the symbol after the dot, and the variable on the left hand side.
+    private final int[] next;
+    private final int[] lhs;
+
+    // The item S' -> S. and the item S' -> .S of the synthetic start variable.
+    private final int accept;
+    private final int initial;
+
+    EarleyParser(ContextFreeGrammar cfg) {
+        GrammarIndex g = cfg.index();
+        this.numVariables = g.numVariables();
+
+        // Number the items in the order of the productions, with S' -> S last.
+        int numItems = 2;
+        for (int p = 0; p < g.numProductions(); p++) numItems += g.length(p) + 1;
+        this.next = new int[numItems];
+        this.lhs = new int[numItems];
+        this.productions = new int[numVariables][];
+        this.nullable = new boolean[numVariables];
+        int item = 0;
+        for (int A = 0; A < numVariables; A++) {
+            nullable[A] = g.isNullable(A);
+            productions[A] = new int[g.firstProduction(A + 1) - g.firstProduction(A)];
+            for (int p = g.firstProduction(A), j = 0; p < g.firstProduction(A + 1); p++) {
+                productions[A][j++] = item;
+                for (int i = 0; i < g.length(p); i++) {
+                    int x = g.symbol(p, i);
+                    next[item] = g.isVariable(x) ? x : -(g.symbol(x) + 1);
+                    lhs[item++] = A;
+                }
+                next[item] = END;
+                lhs[item++] = A;
+            }
+        }
+        this.initial = item;
+        next[item] = 0;
+        lhs[item++] = numVariables;
+        this.accept = item;
+        next[item] = END;
+        lhs[item] = numVariables;
+    }
+
+    /**
+     * Tests if the grammar generates the string.
+     * @param s The string to test
+     * @return true if S derives s.
+     */
+    boolean recognizes(String s) {
+        return new Recognizer(s).run();
+    }
+
+    /**
+     * The state of one run of the parser.
+     * Finished Earley sets only keep the items that wait on a variable, grouped by that variable:
+     * keys[keyStart[j]..keyStart[j + 1]) are the variables waited on in set j, in increasing order, and the items
+     * waiting on keys[t] are waiting[keyOffset[t]..keyOffset[t + 1]), packed with their origins.
+     */
+    private class Recognizer {
+
+        private final String s;
+        private final int n;
+
+        private int[] keyStart;
+        private int[] keys = new int[16];
+        private int[] keyOffset = new int[17];
+        private long[] leo = new long[16];
+        private int numKeys;
+        private long[] waiting = new long[16];
+        private int numWaiting;
+
+        // The set being processed and the next one, which scanning adds to.
+        private ItemSet curr = new ItemSet(), following = new ItemSet();
+
+        // predicted[A] is the last set A was predicted in.
+        private final int[] predicted;
+
+        // Scratch space for grouping the waiting items of a set by variable.
+        private final int[] count;
+        private final int[] touched;
+
+        // The chain followed by a Leo lookup.
+        private int[] chain = new int[16];
+
+        Recognizer(String s) {
+            this.s = s;
+            this.n = s.length();
+            this.keyStart = new int[n + 2];
+            this.predicted = new int[numVariables];
+            Arrays.fill(predicted, -1);
+            this.count = new int[numVariables];
+            this.touched = new int[numVariables];
+        }
+
+        boolean run() {
+            curr.add(initial, 0);
+            for (int i = 0; i <= n; i++) {
+                following.clear();
+                char a = i < n ? s.charAt(i) : 0;
+                for (int e = 0; e < curr.size; e++) {
+                    int item = curr.items[e];
+                    int origin = curr.origins[e];
+                    int X = next[item];
+                    if (X == END) {
+                        // Items that complete in their own set were already moved past their nullable variable.
+                        if (origin != i) complete(lhs[item], origin);
+                    } else if (X >= 0) {
+                        if (predicted[X] != i) {
+                            predicted[X] = i;
+                            for (int first : productions[X]) curr.add(first, i);
+                        }
+                        if (nullable[X]) curr.add(item + 1, origin);
+                    } else if (i < n && X == -(a + 1)) {
+                        following.add(item + 1, origin);
+                    }
+                }
+                if (i == n) return curr.contains(accept, 0);
+                index(i);
+                if (following.size == 0) return false;
+                ItemSet tmp = curr;
+                curr = following;
+                following = tmp;
+            }
+            return false;
+        }
+
+        /**
+         * Moves the dot past A in every item of set j waiting on A, or adds the topmost item of the Leo chain.
+         */
+        private void complete(int A, int j) {
+            int t = find(j, A);
+            if (t < 0) return;
+            long top = leo(t);
+            if (top >= 0) {
+                curr.add((int) (top >>> 32), (int) top);
+                return;
+            }
+            for (int w = keyOffset[t]; w < keyOffset[t + 1]; w++) {
+                long entry = waiting[w];
+                curr.add((int) (entry >>> 32) + 1, (int) entry);
+            }
+        }
+
+        /**
+         * Finds the topmost item of the deterministic reduction path above the key t.
+         * The path continues while exactly one item waits on the variable, and that item completes once the dot
+         * moves past it.
+         * @return The topmost item packed with its origin, or NONE if there is no path.
+         */
+        private long leo(int t) {
+            int depth = 0;
+            long result;
+            while (true) {
+                if (leo[t] != UNKNOWN) {
+                    result = leo[t] == VISITING ? NONE : leo[t];
+                    break;
+                }
+                int item = (int) (waiting[keyOffset[t]] >>> 32);
+                if (keyOffset[t + 1] - keyOffset[t] != 1 || next[item + 1] != END) {
+                    leo[t] = result = NONE;
+                    break;
+                }
+                leo[t] = VISITING;
+                if (depth == chain.length) chain = Arrays.copyOf(chain, 2 * depth);
+                chain[depth++] = t;
+                int origin = (int) waiting[keyOffset[t]];
+                t = find(origin, lhs[item]);
+                if (t < 0) {
+                    result = NONE;
+                    break;
+                }
+            }
+            // Unwind the chain. Each key on it either continues the topmost item above it, or is the top itself.
+            while (depth > 0) {
+                int u = chain[--depth];
+                if (result == NONE) {
+                    long entry = waiting[keyOffset[u]];
+                    result = (((entry >>> 32) + 1) << 32) | (entry & 0xffffffffL);
+                }
+                leo[u] = result;
+            }
+            return result;
+        }
+
+        /**
+         * @return The key of variable A in set j, or -1 if no item of set j waits on A.
+         */
+        private int find(int j, int A) {
+            int lo = keyStart[j], hi = keyStart[j + 1] - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[mid] < A) lo = mid + 1;
+                else if (keys[mid] > A) hi = mid - 1;
+                else return mid;
+            }
+            return -1;
+        }
+
+        /**
+         * Keeps the items of the finished set i that wait on a variable, grouped by that variable.
+         */
+        private void index(int i) {
+            int numTouched = 0;
+            for (int e = 0; e < curr.size; e++) {
+                int X = next[curr.items[e]];
+                if (X >= 0 && count[X]++ == 0) touched[numTouched++] = X;
+            }
+            Arrays.sort(touched, 0, numTouched);
+            if (numKeys + numTouched + 1 > keys.length) {
+                int size = Math.max(2 * keys.length, numKeys + numTouched + 1);
+                keys = Arrays.copyOf(keys, size);
+                keyOffset = Arrays.copyOf(keyOffset, size + 1);
+                leo = Arrays.copyOf(leo, size);
+            }
+            keyStart[i] = numKeys;
+            int total = numWaiting;
+            for (int x = 0; x < numTouched; x++) {
+                int X = touched[x];
+                keys[numKeys] = X;
+                keyOffset[numKeys] = total;
+                leo[numKeys++] = UNKNOWN;
+                total += count[X];
+                // From here on, count[X] is where the next item waiting on X goes.
+                count[X] = keyOffset[numKeys - 1];
+            }
+            keyOffset[numKeys] = total;
+            keyStart[i + 1] = numKeys;
+            if (total > waiting.length) waiting = Arrays.copyOf(waiting, Math.max(2 * waiting.length, total));
+            for (int e = 0; e < curr.size; e++) {
+                int X = next[curr.items[e]];
+                if (X >= 0) waiting[count[X]++] = ((long) curr.items[e] << 32) | curr.origins[e];
+            }
+            numWaiting = total;
+            for (int x = 0; x < numTouched; x++) count[touched[x]] = 0;
+        }
+    }
+
+    /**
+     * An Earley set: a list of items with their origins, and an open addressing hash table to avoid duplicates.
+     */
+    private static class ItemSet {
+
+        int[] items = new int[16];
+        int[] origins = new int[16];
+        int size;
+
+        private long[] table = new long[32];
+        private int[] stamps = new int[32];
+        private int stamp = 1;
+
+        void clear() {
+            size = 0;
+            stamp++;
+        }
+
+        void add(int item, int origin) {
+            long key = ((long) item << 32) | origin;
+            int slot = slot(key);
+            if (stamps[slot] == stamp) return;
+            stamps[slot] = stamp;
+            table[slot] = key;
+            if (size == items.length) {
+                items = Arrays.copyOf(items, 2 * size);
+                origins = Arrays.copyOf(origins, 2 * size);
+            }
+            items[size] = item;
+            origins[size++] = origin;
+            if (2 * size > table.length) rehash();
+        }
+
+        boolean contains(int item, int origin) {
+            return stamps[slot(((long) item << 32) | origin)] == stamp;
+        }
+
+        /**
+         * @return The slot holding key, or the empty slot where it would go.
+         */
+        private int slot(long key) {
+            int mask = table.length - 1;
+            int h = Long.hashCode(key * 0x9E3779B97F4A7C15L);
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (stamps[slot] == stamp && table[slot] != key) slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        private void rehash() {
+            table = new long[2 * table.length];
+            stamps = new int[table.length];
+            stamp = 1;
+            for (int e = 0; e < size; e++) {
+                long key = ((long) items[e] << 32) | origins[e];
+                int slot = slot(key);
+                stamps[slot] = stamp;
+                table[slot] = key;
+            }
+        }
+    }
+
+}
@@ -1,20 +1,238 @@
 package toc.contextfree;
 
 import toc.Acceptor;
+import toc.contextfree.PDATransitionFunction.Move;
 
-import java.util.Set;
+import java.util.*;
 
 /**
+ * A nondeterministic pushdown automaton, which accepts by final state.
+ * State 0 is the initial state, and the stack starts out holding z.
+ *
  * @author Jon Bolin
  */
 public class NPDA extends Acceptor {
 
-    public NPDA(Set<Character> Σ) {
+    public static final int DEFAULT_MAX_CONFIGURATIONS = 1_000_000;
+
+    public final PDATransitionFunction δ;
+    public final Set<Character> Γ;
+    public final char z;
+    public final Set<Integer> F;
+
+    // Built on first use.
+    private PDASimulator simulator;
+
+    public NPDA(PDATransitionFunction δ, Set<Character> Σ, Set<Character> Γ, char z, Set<Integer> F) {
         super(Σ);
+        this.δ = δ;
+        this.Γ = Set.copyOf(Γ);
+        this.z = z;
+        this.F = Set.copyOf(F);
+    }
+
+    /**
+     * Converts this NPDA to a grammar by the triple construction, keeping only the useful triples.
+     * @return A context-free grammar that generates the language of this NPDA.
+     */
+    public ContextFreeGrammar toContextFreeGrammar() {
+        return new TripleConstruction(this).toContextFreeGrammar();
+    }
+
+    /**
+     * @return A simulator that runs this NPDA on a graph-structured stack.
+     */
+    private synchronized PDASimulator simulator() {
+        if (simulator == null) simulator = new PDASimulator(this);
+        return simulator;
     }
 
+    /**
+     * Runs the automaton on all branches at once, sharing their stacks in a graph-structured stack.
+     * Takes polynomial time in the length of s, even when λ moves push without end.
+     * @param s The string to be tested
+     * @return true if some branch reads all of s and ends in a final state.
+     */
     @Override
     public boolean recognizes(String s) {
+        return simulator().accepts(s);
+    }
+
+    /**
+     * Runs the automaton on all branches at once, breadth first: the set of configurations (state, stack) is
+     * advanced one input symbol at a time, after following every λ move. Stacks are immutable linked lists that
+     * are hash-consed, so configurations share their tails and equal configurations are found and merged.
+     * Takes exponential time and memory in the worst case, since the number of distinct stacks can grow
+     * exponentially; kept as a reference for {@link #recognizes(String)}, which is the one to use when memory must
+     * stay bounded. This run fails instead once it holds more than DEFAULT_MAX_CONFIGURATIONS configurations at
+     * one position or stacks in all.
+     *
+     * λ moves that keep pushing never end, so configurations whose stack is higher than
+     * 1 + (n + 1)·(|Q| + 1)²·|Γ|·max(1, m) are dropped, where m is the longest string a move pushes. No accepting
+     * branch is lost: the fewest-node derivation of s in the grammar of the triple construction (with its drain
+     * state) has no path through two nodes with the same variable and the same yield length, so its paths have at
+     * most (n + 1)·(|Q| + 1)²·|Γ| nodes. The run it describes is an accepting run, whose stack holds at most the
+     * current node and the siblings still to be popped to the right of the path.
+     * @param s The string to be tested
+     * @return true if some branch reads all of s and ends in a final state.
+     */
+    public boolean recognizesBreadthFirst(String s) {
+        return recognizesBreadthFirst(s, DEFAULT_MAX_CONFIGURATIONS);
+    }
+
+    /**
+     * Runs the automaton breadth first, as in {@link #recognizesBreadthFirst(String)}.
+     * @param s The string to be tested
+     * @param maxConfigurations The most configurations the run may hold at one position, and the most stacks
+     * @return true if some branch reads all of s and ends in a final state.
+     */
+    public boolean recognizesBreadthFirst(String s, int maxConfigurations) {
+        long limit = heightBound(s.length());
+        Stacks stacks = new Stacks(maxConfigurations);
+        Configurations curr = new Configurations(maxConfigurations);
+        curr.add(0, stacks.push(z, Stacks.EMPTY));
+        for (int i = 0; ; i++) {
+            // Follow λ moves; the configurations added are expanded in turn.
+            for (int c = 0; c < curr.size; c++) {
+                Stack stack = curr.stacks[c];
+                if (stack == Stacks.EMPTY) continue;
+                for (Move m : δ.moves(curr.states[c], stack.top, 'λ')) {
+                    if (stack.height - 1 + m.push.length() <= limit) {
+                        curr.add(m.state, stacks.replaceTop(stack, m.push));
+                    }
+                }
+            }
+            if (i == s.length()) break;
+
+            char a = s.charAt(i);
+            if (!Σ.contains(a)) {
+                throw new RuntimeException("Character not in alphabet.");
+            }
+            Configurations following = new Configurations(maxConfigurations);
+            for (int c = 0; c < curr.size; c++) {
+                Stack stack = curr.stacks[c];
+                if (stack == Stacks.EMPTY) continue;
+                for (Move m : δ.moves(curr.states[c], stack.top, a)) {
+                    if (stack.height - 1 + m.push.length() <= limit) {
+                        following.add(m.state, stacks.replaceTop(stack, m.push));
+                    }
+                }
+            }
+            if (following.size == 0) {
+                // The rest of s must still be in the alphabet.
+                for (int j = i + 1; j < s.length(); j++) {
+                    if (!Σ.contains(s.charAt(j))) throw new RuntimeException("Character not in alphabet.");
+                }
+                return false;
+            }
+            curr = following;
+        }
+        for (int c = 0; c < curr.size; c++) {
+            if (F.contains(curr.states[c])) return true;
+        }
         return false;
     }
+
+    /**
+     * @return The highest stack an accepting run on a string of length n needs, capped at Integer.MAX_VALUE.
+     */
+    private long heightBound(int n) {
+        int longest = 1;
+        for (int q = 0; q < δ.numStates(); q++) {
+            for (Map<Character, Set<Move>> bySymbol : δ.transitions(q).values()) {
+                for (Set<Move> moves : bySymbol.values()) {
+                    for (Move m : moves) longest = Math.max(longest, m.push.length());
+                }
+            }
+        }
+        long triples = (long) (δ.numStates() + 1) * (δ.numStates() + 1) * Γ.size();
+        double bound = 1 + (n + 1.0) * triples * longest;
+        return bound >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (long) bound;
+    }
+
+    /**
+     * An immutable stack: the symbol on top and the rest of the stack. Stacks are hash-consed by Stacks, so equal
+     * stacks are the same object and can be compared by identity.
+     */
+    private static final class Stack {
+
+        final char top;
+        final Stack rest;
+        final int id;
+        final int height;
+
+        Stack(char top, Stack rest, int id) {
+            this.top = top;
+            this.rest = rest;
+            this.id = id;
+            this.height = rest == null ? 0 : rest.height + 1;
+        }
+    }
+
+    /**
+     * The hash-consing table for the stacks of one run.
+     */
+    private static final class Stacks {
+
+        static final Stack EMPTY = new Stack('\0', null, 0);
+
+        private final Map<Long, Stack> table = new HashMap<>();
+        private final int max;
+
+        Stacks(int max) {
+            this.max = max;
+        }
+
+        Stack push(char b, Stack rest) {
+            long key = ((long) rest.id << 16) | b;
+            Stack stack = table.get(key);
+            if (stack == null) {
+                if (table.size() == max) {
+                    throw new RuntimeException("More than " + max + " stacks; use recognizes instead.");
+                }
+                stack = new Stack(b, rest, table.size() + 1);
+                table.put(key, stack);
+            }
+            return stack;
+        }
+
+        /**
+         * @return The stack with its top replaced by push, whose first symbol becomes the new top.
+         */
+        Stack replaceTop(Stack stack, String push) {
+            Stack result = stack.rest;
+            for (int i = push.length() - 1; i >= 0; i--) result = push(push.charAt(i), result);
+            return result;
+        }
+    }
+
+    /**
+     * A set of configurations in the order they were added.
+     */
+    private static final class Configurations {
+
+        int[] states = new int[16];
+        Stack[] stacks = new Stack[16];
+        int size;
+        private final Set<Long> seen = new HashSet<>();
+        private final int max;
+
+        Configurations(int max) {
+            this.max = max;
+        }
+
+        void add(int state, Stack stack) {
+            if (!seen.add(((long) state << 32) | stack.id)) return;
+            if (size == max) {
+                throw new RuntimeException("More than " + max + " configurations; use recognizes instead.");
+            }
+            if (size == states.length) {
+                states = Arrays.copyOf(states, 2 * size);
+                stacks = Arrays.copyOf(stacks, 2 * size);
+            }
+            states[size] = state;
+            stacks[size++] = stack;
+        }
+    }
+
 }
@@ -0,0 +1,105 @@
+package toc.contextfree;
+
+import toc.contextfree.PDATransitionFunction.Move;
+
+import java.util.*;
+
+/**
+ * A class to build an NPDA. State 0 is the initial state.
+ *
+ * @author Jon Bolin
+ */
+public class PDABuilder {
+
+    public final Set<Character> Σ;
+    public final Set<Character> Γ;
+    public final char z;
+
+    private final List<Map<Character, Map<Character, Set<Move>>>> δ = new ArrayList<>();
+    private final Set<Integer> F = new HashSet<>();
+
+    /**
+     * @param Σ The input alphabet
+     * @param Γ The stack alphabet
+     * @param z The symbol on the stack at the start
+     */
+    public PDABuilder(Set<Character> Σ, Set<Character> Γ, char z) {
+        if (!Γ.contains(z)) throw new RuntimeException("Stack start symbol is not in the stack alphabet.");
+        this.Σ = Set.copyOf(Σ);
+        this.Γ = Set.copyOf(Γ);
+        this.z = z;
+    }
+
+    /**
+     * Adds a state with no transitions.
+     * @return The new state.
+     */
+    public int addState() {
+        δ.add(new HashMap<>());
+        return δ.size() - 1;
+    }
+
+    /**
+     * @return The number of states added so far.
+     */
+    public int numStates() {
+        return δ.size();
+    }
+
+    /**
+     * Adds a transition from q to p reading a, which replaces top with push.
+     * @param q The start state
+     * @param a The input symbol, or λ to read nothing
+     * @param top The symbol on top of the stack
+     * @param p The resulting state
+     * @param push The symbols replacing top, with the new top first. λ or the empty string pops top.
+     */
+    public void addTransition(int q, char a, char top, int p, String push) {
+        if (q < 0 || q >= δ.size() || p < 0 || p >= δ.size()) {
+            throw new RuntimeException("No such state: " + (q < 0 || q >= δ.size() ? q : p));
+        }
+        if (a != 'λ' && !Σ.contains(a)) throw new RuntimeException("Character not in alphabet.");
+        push = push.replace("λ", "");
+        for (char b : (top + push).toCharArray()) {
+            if (!Γ.contains(b)) throw new RuntimeException("Stack symbol not in stack alphabet: " + b);
+        }
+        δ.get(q).computeIfAbsent(top, (b) -> new HashMap<>())
+                .computeIfAbsent(a, (c) -> new HashSet<>())
+                .add(new Move(p, push));
+    }
+
+    /**
+     * Adds a transition from q to p that reads nothing, and replaces top with push.
+     */
+    public void addλTransition(int q, char top, int p, String push) {
+        addTransition(q, 'λ', top, p, push);
+    }
+
+    /**
+     * Adds f to the set of final states.
+     * @param f The new final state.
+     */
+    public void addFinalState(int f) {
+        F.add(f);
+    }
+
+    /**
+     * Produce the final NPDA.
+     * @return An NPDA with the states and transitions built using this PDABuilder.
+     */
+    public NPDA build() {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Map<Character, Map<Character, Set<Move>>>[] map = new Map[δ.size()];
+        for (int q = 0; q < map.length; q++) {
+            Map<Character, Map<Character, Set<Move>>> byTop = new HashMap<>();
+            for (Map.Entry<Character, Map<Character, Set<Move>>> e : δ.get(q).entrySet()) {
+                Map<Character, Set<Move>> bySymbol = new HashMap<>();
+                for (Map.Entry<Character, Set<Move>> m : e.getValue().entrySet()) bySymbol.put(m.getKey(), Set.copyOf(m.getValue()));
+                byTop.put(e.getKey(), Collections.unmodifiableMap(bySymbol));
+            }
+            map[q] = Collections.unmodifiableMap(byTop);
+        }
+        return new NPDA(new PDATransitionFunction(Σ, map), Σ, Γ, z, F);
+    }
+
+}
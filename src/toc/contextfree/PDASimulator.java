@@ -0,0 +1,221 @@
+package toc.contextfree;
+
+import toc.contextfree.PDATransitionFunction.Move;
+
+import java.util.*;
+
+/**
+ * Runs an NPDA on all branches at once with a graph-structured stack, as in Tomita's GLR parser.
+ * The stacks of all branches are merged into one graph. A node is a symbol pushed in some state at some input
+ * position, with edges to every node it was pushed on; a configuration is a state, a position and the top node.
+ * What happens above a node depends only on the symbol, state and position, so branches pushing the same symbol
+ * in the same state at the same position share the node.
+ *
+ * Moves are split into steps that pop or push one symbol: replacing the top with A1...Am pops it into a helper
+ * state of the move, which pushes Am, ..., A1 through more helper states. Every pop is recorded on the popped
+ * node as a summary edge (the state and position it leads to), and replayed when the node is later pushed on
+ * another node. There are O((|Q| + |δ|)·|Γ|) nodes per position, so acceptance takes polynomial time whatever
+ * the nondeterminism, and λ moves that push forever come back to nodes that already exist.
+ *
+ * @author Jon Bolin
+ */
+class PDASimulator {
+
+    private final Set<Character> Σ;
+    private final Set<Integer> F;
+    private final char z;
+
+    // States below numStates are the automaton's. Helper state numStates + h pushes symbol[h] and goes to next[h].
+    private final int numStates;
+    private char[] symbol = new char[16];
+    private int[] next = new int[16];
+    private int numHelpers;
+
+    // targets.get(q).get(top).get(a) are the states the moves from q go to once they have popped top, reading a.
+    private final List<Map<Character, Map<Character, int[]>>> targets;
+
+    PDASimulator(NPDA pda) {
+        this.Σ = pda.Σ;
+        this.F = pda.F;
+        this.z = pda.z;
+        this.numStates = pda.δ.numStates();
+        this.targets = new ArrayList<>(numStates);
+        for (int q = 0; q < numStates; q++) {
+            Map<Character, Map<Character, int[]>> byTop = new HashMap<>();
+            for (Map.Entry<Character, Map<Character, Set<Move>>> e : pda.δ.transitions(q).entrySet()) {
+                Map<Character, int[]> bySymbol = new HashMap<>();
+                for (Map.Entry<Character, Set<Move>> m : e.getValue().entrySet()) {
+                    int[] t = new int[m.getValue().size()];
+                    int i = 0;
+                    for (Move move : m.getValue()) t[i++] = compile(move);
+                    bySymbol.put(m.getKey(), t);
+                }
+                byTop.put(e.getKey(), bySymbol);
+            }
+            targets.add(byTop);
+        }
+    }
+
+    /**
+     * @return The state a move goes to once it has popped the top: the move's own state if it pushes nothing,
+     *         otherwise the first of a chain of helper states that push its symbols, last symbol first.
+     */
+    private int compile(Move move) {
+        int state = move.state;
+        for (int i = 0; i < move.push.length(); i++) {
+            if (numHelpers == symbol.length) {
+                symbol = Arrays.copyOf(symbol, 2 * numHelpers);
+                next = Arrays.copyOf(next, 2 * numHelpers);
+            }
+            symbol[numHelpers] = move.push.charAt(i);
+            next[numHelpers] = state;
+            state = numStates + numHelpers++;
+        }
+        return state;
+    }
+
+    /**
+     * @param s The string to be tested
+     * @return true if some branch reads all of s and ends in a final state.
+     */
+    boolean accepts(String s) {
+        return new Run(s).accepts();
+    }
+
+    /**
+     * A node of the graph-structured stack. The bottom node stands for the empty stack and has no symbol.
+     */
+    private static final class Node {
+
+        final char top;
+        final List<Node> below = new ArrayList<>();
+        final Set<Node> belowSet = new HashSet<>();
+
+        // The summary edges: (state, position) pairs packed into longs, reached by popping this node.
+        final List<Long> pops = new ArrayList<>();
+        final Set<Long> popSet = new HashSet<>();
+
+        Node(char top) {
+            this.top = top;
+        }
+
+        boolean addBelow(Node u) {
+            if (!belowSet.add(u)) return false;
+            below.add(u);
+            return true;
+        }
+    }
+
+    /**
+     * A set of configurations at one position, in the order they were added.
+     */
+    private static final class Configurations {
+
+        int[] states = new int[16];
+        Node[] nodes = new Node[16];
+        int size;
+        private final Map<Node, Set<Integer>> seen = new HashMap<>();
+
+        void add(int state, Node node) {
+            if (!seen.computeIfAbsent(node, (v) -> new HashSet<>()).add(state)) return;
+            if (size == states.length) {
+                states = Arrays.copyOf(states, 2 * size);
+                nodes = Arrays.copyOf(nodes, 2 * size);
+            }
+            states[size] = state;
+            nodes[size++] = node;
+        }
+    }
+
+    /**
+     * The graph-structured stack of one string.
+     */
+    private final class Run {
+
+        private final String s;
+        private int position;
+
+        // The configurations at the current and the next position, and the nodes pushed at the current position.
+        private Configurations curr = new Configurations(), following = new Configurations();
+        private Map<Long, Node> pushed = new HashMap<>();
+
+        Run(String s) {
+            this.s = s;
+        }
+
+        boolean accepts() {
+            Node start = new Node(z);
+            start.addBelow(new Node('\0'));
+            curr.add(0, start);
+            for (position = 0; ; position++) {
+                if (position < s.length() && !Σ.contains(s.charAt(position))) {
+                    throw new RuntimeException("Character not in alphabet.");
+                }
+                // Configurations added at this position are expanded in turn.
+                for (int c = 0; c < curr.size; c++) expand(curr.states[c], curr.nodes[c]);
+                if (position == s.length()) break;
+                if (following.size == 0) {
+                    // The run is dead, but the rest of the characters must still be in the alphabet.
+                    for (int i = position + 1; i < s.length(); i++) {
+                        if (!Σ.contains(s.charAt(i))) {
+                            throw new RuntimeException("Character not in alphabet.");
+                        }
+                    }
+                    return false;
+                }
+                curr = following;
+                following = new Configurations();
+                pushed = new HashMap<>();
+            }
+            for (int c = 0; c < curr.size; c++) {
+                if (F.contains(curr.states[c])) return true;
+            }
+            return false;
+        }
+
+        private void expand(int q, Node v) {
+            if (q >= numStates) {
+                push(symbol[q - numStates], next[q - numStates], v);
+                return;
+            }
+            Map<Character, int[]> bySymbol = targets.get(q).get(v.top);
+            if (bySymbol == null) return;
+            int[] t = bySymbol.get('λ');
+            if (t != null) {
+                for (int p : t) pop(v, p, position);
+            }
+            if (position < s.length() && (t = bySymbol.get(s.charAt(position))) != null) {
+                for (int p : t) pop(v, p, position + 1);
+            }
+        }
+
+        /**
+         * Pops v, going to state p at position k. The pop is remembered for nodes that v is pushed on later.
+         */
+        private void pop(Node v, int p, int k) {
+            long summary = ((long) p << 32) | k;
+            if (!v.popSet.add(summary)) return;
+            v.pops.add(summary);
+            for (int b = 0; b < v.below.size(); b++) add(p, v.below.get(b), k);
+        }
+
+        /**
+         * Pushes b on u, going to state p. The pops already seen from the pushed node are replayed on u.
+         */
+        private void push(char b, int p, Node u) {
+            Node w = pushed.computeIfAbsent(((long) p << 16) | b, (key) -> new Node(b));
+            if (w.addBelow(u)) {
+                for (int i = 0; i < w.pops.size(); i++) {
+                    long summary = w.pops.get(i);
+                    add((int) (summary >>> 32), u, (int) summary);
+                }
+            }
+            add(p, w, position);
+        }
+
+        private void add(int p, Node v, int k) {
+            (k == position ? curr : following).add(p, v);
+        }
+    }
+
+}
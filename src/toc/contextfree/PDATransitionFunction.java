@@ -5,43 +5,80 @@ import toc.TransitionFunction;
 import java.util.*;
 
 /**
+ * The transition function of a pushdown automaton: state -> stack top -> input symbol (or λ) -> moves.
+ * A move goes to a new state and replaces the stack top with a string, whose first character becomes the new top.
+ * Replacing the top with the empty string pops it.
+ *
  * @author Jon Bolin
  */
 public class PDATransitionFunction extends TransitionFunction {
 
-    private static final Map<Character, Set<Integer>> EMPTY = Collections.emptyMap();
+    private static final Map<Character, Set<Move>> EMPTY = Collections.emptyMap();
 
-    private Map<Character, Map<Character, Set<Integer>>>[] map;
+    /**
+     * A move of a pushdown automaton: the state it goes to and the string that replaces the stack top.
+     */
+    public static final class Move {
 
-    public PDATransitionFunction(Set<Character> Σ, Map<Character, Map<Character, Set<Integer>>>[] map) {
+        public final int state;
+        public final String push;
+
+        public Move(int state, String push) {
+            this.state = state;
+            this.push = push;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Move && ((Move) other).state == state && ((Move) other).push.equals(push);
+        }
+
+        @Override
+        public int hashCode() {
+            return state * 0x9E3779B9 + push.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "(" + state + ", " + (push.isEmpty() ? "λ" : push) + ")";
+        }
+    }
+
+    private final Map<Character, Map<Character, Set<Move>>>[] map;
+
+    /**
+     * @param Σ The input alphabet
+     * @param map map[q].get(b).get(a) are the moves from state q with b on top of the stack, reading a, or
+     *            reading nothing if a is λ.
+     */
+    public PDATransitionFunction(Set<Character> Σ, Map<Character, Map<Character, Set<Move>>>[] map) {
         super(Σ);
         this.map = map;
     }
 
-    public Set<Integer> expandLambda(Set<Integer> states, char stackTop) {
-        Set<Integer> startStates = new HashSet<>(states);
-        Stack<Integer> stack = new Stack<>();
-        stack.addAll(states);
-        while (!stack.isEmpty()) {
-            int q = stack.pop();
-            for (int p : map[q].getOrDefault(stackTop, EMPTY).getOrDefault('λ', Collections.emptySet())) {
-                if (!startStates.contains(p)) {
-                    startStates.add(p);
-                    stack.push(p);
-                }
-            }
-        }
-        return startStates;
+    /**
+     * @param q A state
+     * @param top The symbol on top of the stack
+     * @param a An input symbol, or λ
+     * @return The moves from q with top on the stack, reading a.
+     */
+    public Set<Move> moves(int q, char top, char a) {
+        return map[q].getOrDefault(top, EMPTY).getOrDefault(a, Collections.emptySet());
     }
 
-    public Set<Integer> of(Set<Integer> currStates, Character stack, Character c) {
-        Set<Integer> startStates = new HashSet<Integer>(currStates);
-        startStates.addAll(expandLambda(startStates, stack));
-        Set<Integer> newStates = new HashSet<>();
-        for (int i : startStates) {
-            newStates.addAll(map[i].getOrDefault(stack, EMPTY).getOrDefault(c, Collections.emptySet()));
-        }
-        return newStates;
+    /**
+     * @param q A state
+     * @return The moves from q, by stack top and input symbol.
+     */
+    public Map<Character, Map<Character, Set<Move>>> transitions(int q) {
+        return map[q];
+    }
+
+    /**
+     * @return The number of states.
+     */
+    public int numStates() {
+        return map.length;
     }
 
 }
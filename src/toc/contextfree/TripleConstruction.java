@@ -0,0 +1,237 @@
+package toc.contextfree;
+
+import toc.contextfree.PDATransitionFunction.Move;
+import toc.grammar.Production;
+
+import java.util.*;
+
+/**
+ * The construction of a context-free grammar from an NPDA by triples. The variable [p X q] derives the strings
+ * the automaton reads going from state p with X on top of the stack to state q with X popped.
+ * A move from p reading a that replaces X with Y1...Ym and goes to r gives the productions
+ * [p X q] -> a [r Y1 s1][s1 Y2 s2]...[sm-1 Ym q] for every choice of states s1, ..., sm-1.
+ *
+ * The grammar accepts by empty stack, so a drain state d is added, which every final state can move to, and
+ * which pops anything. The start variable then has a production S -> [0 z q] for q final or d.
+ *
+ * There are O(|Q|²·|Γ|) triples, and most of them never pop their symbol or can't be reached from the start.
+ * The generating triples are found first, as the fixpoint of the pop summaries. The grammar is then built from
+ * the start variable outwards, only following triples that generate, so every variable and production that is
+ * made is useful.
+ *
+ * @author Jon Bolin
+ */
+public class TripleConstruction {
+
+    /**
+     * A move with the stack symbols it pushes replaced by their indices.
+     */
+    private static final class Rule {
+
+        final char a;
+        final int state;
+        final int[] push;
+
+        Rule(char a, int state, int[] push) {
+            this.a = a;
+            this.state = state;
+            this.push = push;
+        }
+    }
+
+    private final int numStates;
+    private final int k;
+
+    // rules[p * k + X] are the moves from state p with stack symbol X on top. State numStates is the drain state.
+    private final List<List<Rule>> rules;
+
+    // generating[(p * k + X) * numStates + q] is true if [p X q] derives a string of terminals.
+    private final boolean[] generating;
+
+    // The variables of the triples used so far, in the order they were named, which is the order they're expanded.
+    private final Map<Integer, Character> names = new HashMap<>();
+    private final List<Integer> queue = new ArrayList<>();
+    private final Set<Character> taken;
+    private char next = 'A';
+
+    private final Set<Production> P = new HashSet<>();
+    private final ContextFreeGrammar grammar;
+
+    /**
+     * Runs the construction.
+     * @param pda The NPDA to convert
+     */
+    public TripleConstruction(NPDA pda) {
+        this.numStates = pda.δ.numStates() + 1;
+        List<Character> Γ = new ArrayList<>(pda.Γ);
+        Collections.sort(Γ);
+        this.k = Γ.size();
+        Map<Character, Integer> index = new HashMap<>();
+        for (int X = 0; X < k; X++) index.put(Γ.get(X), X);
+
+        int drain = numStates - 1;
+        this.rules = new ArrayList<>(numStates * k);
+        for (int p = 0; p < numStates; p++) {
+            for (int X = 0; X < k; X++) {
+                List<Rule> list = new ArrayList<>();
+                if (p == drain || pda.F.contains(p)) list.add(new Rule('λ', drain, new int[0]));
+                if (p != drain) {
+                    for (Map.Entry<Character, Set<Move>> e : pda.δ.transitions(p).getOrDefault(Γ.get(X), Map.of()).entrySet()) {
+                        for (Move m : e.getValue()) {
+                            int[] push = new int[m.push.length()];
+                            for (int i = 0; i < push.length; i++) push[i] = index.get(m.push.charAt(i));
+                            list.add(new Rule(e.getKey(), m.state, push));
+                        }
+                    }
+                }
+                rules.add(list);
+            }
+        }
+        this.generating = new boolean[numStates * k * numStates];
+        findGenerating();
+
+        this.taken = new HashSet<>(pda.Σ);
+        char S = ContextFreeGrammar.freeVariable('S', taken);
+        taken.add(S);
+        int z = index.get(pda.z);
+        for (int q = 0; q < numStates && drain > 0; q++) {
+            if ((q == drain || pda.F.contains(q)) && generating[triple(0, z, q)]) {
+                P.add(new Production(String.valueOf(S), String.valueOf(name(triple(0, z, q)))));
+            }
+        }
+        expand();
+        Set<Character> V = new HashSet<>(taken);
+        V.removeAll(pda.Σ);
+        this.grammar = new ContextFreeGrammar(pda.Σ, V, P, S);
+    }
+
+    /**
+     * @return A grammar with only useful variables and productions, which generates the language of the NPDA.
+     */
+    public ContextFreeGrammar toContextFreeGrammar() {
+        return grammar;
+    }
+
+    private int triple(int p, int X, int q) {
+        return (p * k + X) * numStates + q;
+    }
+
+    /**
+     * Finds the generating triples by rounds. A rule is tried again only when a triple of a symbol it pushes was
+     * found generating in the round before.
+     */
+    private void findGenerating() {
+        boolean[] changed = new boolean[k];
+        Arrays.fill(changed, true);
+        boolean[] from = new boolean[numStates], to = new boolean[numStates];
+        boolean again = true;
+        for (int round = 0; again; round++) {
+            again = false;
+            boolean[] found = new boolean[k];
+            for (int p = 0; p < numStates; p++) {
+                for (int X = 0; X < k; X++) {
+                    for (Rule rule : rules.get(p * k + X)) {
+                        if (rule.push.length == 0) {
+                            if (round == 0) mark(triple(p, X, rule.state), X, found);
+                            continue;
+                        }
+                        boolean tried = true;
+                        for (int Y : rule.push) tried &= !changed[Y];
+                        if (tried) continue;
+                        // The states the automaton can be in after popping the first i symbols pushed.
+                        Arrays.fill(from, false);
+                        from[rule.state] = true;
+                        for (int Y : rule.push) {
+                            Arrays.fill(to, false);
+                            for (int s = 0; s < numStates; s++) {
+                                if (!from[s]) continue;
+                                for (int t = 0; t < numStates; t++) to[t] |= generating[triple(s, Y, t)];
+                            }
+                            boolean[] swap = from;
+                            from = to;
+                            to = swap;
+                        }
+                        for (int q = 0; q < numStates; q++) {
+                            if (from[q]) mark(triple(p, X, q), X, found);
+                        }
+                    }
+                }
+            }
+            for (int X = 0; X < k; X++) again |= found[X];
+            changed = found;
+        }
+    }
+
+    private void mark(int t, int X, boolean[] found) {
+        if (generating[t]) return;
+        generating[t] = true;
+        found[X] = true;
+    }
+
+    /**
+     * Builds the grammar from the start variable outwards, expanding the triples in the order they are named.
+     */
+    private void expand() {
+        boolean[][] after = new boolean[0][];
+        StringBuilder body = new StringBuilder();
+        for (int head = 0; head < queue.size(); head++) {
+            int t = queue.get(head);
+            int q = t % numStates, X = t / numStates % k, p = t / numStates / k;
+            String lhs = String.valueOf(names.get(t));
+            for (Rule rule : rules.get(p * k + X)) {
+                int m = rule.push.length;
+                if (m == 0) {
+                    if (rule.state == q) P.add(new Production(lhs, rule.a == 'λ' ? "" : String.valueOf(rule.a)));
+                    continue;
+                }
+                // after[i][s] is true if the last m - i symbols pushed can be popped from s, ending in q.
+                if (after.length <= m) after = new boolean[m + 1][];
+                for (int i = 0; i <= m; i++) after[i] = new boolean[numStates];
+                after[m][q] = true;
+                for (int i = m - 1; i >= 0; i--) {
+                    for (int s = 0; s < numStates; s++) {
+                        for (int u = 0; u < numStates && !after[i][s]; u++) {
+                            after[i][s] = after[i + 1][u] && generating[triple(s, rule.push[i], u)];
+                        }
+                    }
+                }
+                if (!after[0][rule.state]) continue;
+                body.setLength(0);
+                if (rule.a != 'λ') body.append(rule.a);
+                chains(lhs, rule.push, 0, rule.state, after, body);
+            }
+        }
+    }
+
+    /**
+     * Adds a production for every chain of states that pops push[i..] from state s, passing only through
+     * generating triples. The symbols of the body chosen so far are in body.
+     */
+    private void chains(String lhs, int[] push, int i, int s, boolean[][] after, StringBuilder body) {
+        if (i == push.length) {
+            P.add(new Production(lhs, body.toString()));
+            return;
+        }
+        for (int u = 0; u < numStates; u++) {
+            if (!after[i + 1][u] || !generating[triple(s, push[i], u)]) continue;
+            body.append(name(triple(s, push[i], u)));
+            chains(lhs, push, i + 1, u, after, body);
+            body.setLength(body.length() - 1);
+        }
+    }
+
+    /**
+     * @return The variable of triple t, made and queued to be expanded when it is first seen.
+     */
+    private char name(int t) {
+        Character v = names.get(t);
+        if (v == null) {
+            v = next = ContextFreeGrammar.freeVariable(next, taken);
+            taken.add(v);
+            names.put(t, v);
+            queue.add(t);
+        }
+        return v;
+    }
+
+}
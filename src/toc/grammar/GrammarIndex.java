@@ -0,0 +1,294 @@
+package toc.grammar;
+
+import java.util.*;
+
+/**
+ * A grammar whose productions all have a single variable on the left, compiled to integer arrays.
+ * Symbols are numbered densely: the variables are 0, 1, ..., numVariables() - 1, with the start variable 0,
+ * and the terminals come after them. Productions are numbered so that the productions of each variable are
+ * consecutive, and their right hand sides are stored back to back in one array.
+ * The nullable, generating and reachable variables are computed up front, in time linear in the size of the grammar.
+ *
+ * @author Jon Bolin
+ */
+public class GrammarIndex {
+
+    private final int numVariables;
+    private final char[] symbols;
+    private final Map<Character, Integer> ids = new HashMap<>();
+
+    // The productions of variable A are first[A]..first[A + 1]. Production p is lhs[p] -> body[start[p]..start[p + 1]).
+    private final int[] first;
+    private final int[] lhs;
+    private final int[] start;
+    private final int[] body;
+    private final Production[] productions;
+
+    // The productions where variable A occurs on the right are uses[useStart[A]..useStart[A + 1]), once per occurrence.
+    private final int[] useStart;
+    private final int[] uses;
+
+    private final boolean[] nullable, generating, reachable;
+
+    /**
+     * Compiles a grammar.
+     * @param g A grammar with a single variable on the left of every production
+     */
+    public GrammarIndex(Grammar g) {
+        // Number the symbols, with the start variable first.
+        List<Character> variables = new ArrayList<>(g.V);
+        variables.remove(g.S);
+        variables.add(0, g.S);
+        this.numVariables = variables.size();
+        this.symbols = new char[numVariables + g.T.size()];
+        int x = 0;
+        for (char v : variables) symbols[x++] = v;
+        for (char t : g.T) symbols[x++] = t;
+        for (x = 0; x < symbols.length; x++) ids.put(symbols[x], x);
+
+        // Sort the productions by left hand side.
+        int numProductions = g.P.size();
+        this.first = new int[numVariables + 1];
+        for (Production p : g.P) {
+            if (p.LHS.length() != 1) {
+                throw new RuntimeException("Left hand side is not a single variable: " + p);
+            }
+            first[ids.get(p.LHS.charAt(0)) + 1]++;
+        }
+        for (int A = 0; A < numVariables; A++) first[A + 1] += first[A];
+        int[] fill = Arrays.copyOf(first, numVariables);
+        this.productions = new Production[numProductions];
+        for (Production p : g.P) productions[fill[ids.get(p.LHS.charAt(0))]++] = p;
+
+        this.lhs = new int[numProductions];
+        this.start = new int[numProductions + 1];
+        for (int p = 0; p < numProductions; p++) start[p + 1] = start[p] + productions[p].RHS.length();
+        this.body = new int[start[numProductions]];
+        this.useStart = new int[numVariables + 1];
+        for (int A = 0; A < numVariables; A++) {
+            for (int p = first[A]; p < first[A + 1]; p++) {
+                lhs[p] = A;
+                String rhs = productions[p].RHS;
+                for (int i = 0; i < rhs.length(); i++) {
+                    int y = ids.get(rhs.charAt(i));
+                    body[start[p] + i] = y;
+                    if (y < numVariables) useStart[y + 1]++;
+                }
+            }
+        }
+        for (int A = 0; A < numVariables; A++) useStart[A + 1] += useStart[A];
+        this.uses = new int[useStart[numVariables]];
+        fill = Arrays.copyOf(useStart, numVariables);
+        for (int p = 0; p < numProductions; p++) {
+            for (int i = start[p]; i < start[p + 1]; i++) {
+                if (body[i] < numVariables) uses[fill[body[i]]++] = p;
+            }
+        }
+
+        this.nullable = derive(true);
+        this.generating = derive(false);
+        this.reachable = reachable();
+    }
+
+    /**
+     * @return The number of variables. Variables are the symbols 0 to numVariables() - 1, and 0 is the start variable.
+     */
+    public int numVariables() {
+        return numVariables;
+    }
+
+    /**
+     * @return The number of terminals. Terminals are the symbols numVariables() to numSymbols() - 1.
+     */
+    public int numTerminals() {
+        return symbols.length - numVariables;
+    }
+
+    /**
+     * @return The number of variables and terminals.
+     */
+    public int numSymbols() {
+        return symbols.length;
+    }
+
+    /**
+     * @return The number of productions.
+     */
+    public int numProductions() {
+        return productions.length;
+    }
+
+    /**
+     * @param x A symbol
+     * @return true if x is a variable.
+     */
+    public boolean isVariable(int x) {
+        return x < numVariables;
+    }
+
+    /**
+     * @param x A symbol
+     * @return The character of the symbol.
+     */
+    public char symbol(int x) {
+        return symbols[x];
+    }
+
+    /**
+     * @param c A character
+     * @return The symbol of the character, or -1 if it is neither a variable nor a terminal.
+     */
+    public int id(char c) {
+        return ids.getOrDefault(c, -1);
+    }
+
+    /**
+     * @param A A variable
+     * @return The first production of A. The productions of A are firstProduction(A) to firstProduction(A + 1) - 1.
+     */
+    public int firstProduction(int A) {
+        return first[A];
+    }
+
+    /**
+     * @param p A production
+     * @return The variable on the left of p.
+     */
+    public int lhs(int p) {
+        return lhs[p];
+    }
+
+    /**
+     * @param p A production
+     * @return The number of symbols on the right of p.
+     */
+    public int length(int p) {
+        return start[p + 1] - start[p];
+    }
+
+    /**
+     * @param p A production
+     * @param i A position on the right of p
+     * @return The symbol at position i on the right of p.
+     */
+    public int symbol(int p, int i) {
+        return body[start[p] + i];
+    }
+
+    /**
+     * @param p A production
+     * @return The production p of the grammar.
+     */
+    public Production production(int p) {
+        return productions[p];
+    }
+
+    /**
+     * @param A A variable
+     * @return true if A derives the empty string.
+     */
+    public boolean isNullable(int A) {
+        return nullable[A];
+    }
+
+    /**
+     * @param A A variable
+     * @return true if A derives a string of terminals.
+     */
+    public boolean isGenerating(int A) {
+        return generating[A];
+    }
+
+    /**
+     * @param A A variable
+     * @return true if A can be reached from the start variable using only productions whose variables are all
+     *         generating. The start variable is always reachable.
+     */
+    public boolean isReachable(int A) {
+        return reachable[A];
+    }
+
+    /**
+     * @param p A production
+     * @return true if p is used in deriving some string: its variable is reachable and every variable on its
+     *         right is generating.
+     */
+    public boolean isUseful(int p) {
+        return reachable[lhs[p]] && allGenerating(p, generating);
+    }
+
+    /**
+     * @return true if every variable on the right of production p is generating.
+     */
+    private boolean allGenerating(int p, boolean[] generating) {
+        for (int i = start[p]; i < start[p + 1]; i++) {
+            if (body[i] < numVariables && !generating[body[i]]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the variables with a production whose variables all have the property, starting from the productions
+     * without variables. Every production counts the variables on its right that don't have the property yet,
+     * and a variable gets the property when one of its counts drops to zero.
+     * A production with a terminal on the right never makes its variable nullable.
+     * @param empty true to find the nullable variables, false to find the generating ones
+     */
+    private boolean[] derive(boolean empty) {
+        boolean[] found = new boolean[numVariables];
+        int[] missing = new int[productions.length];
+        int[] queue = new int[numVariables];
+        int head = 0, tail = 0;
+        for (int p = 0; p < productions.length; p++) {
+            for (int i = start[p]; i < start[p + 1]; i++) {
+                if (body[i] < numVariables) {
+                    missing[p]++;
+                } else if (empty) {
+                    missing[p] = Integer.MAX_VALUE;
+                    break;
+                }
+            }
+            if (missing[p] == 0 && !found[lhs[p]]) {
+                found[lhs[p]] = true;
+                queue[tail++] = lhs[p];
+            }
+        }
+        while (head < tail) {
+            int A = queue[head++];
+            for (int u = useStart[A]; u < useStart[A + 1]; u++) {
+                int p = uses[u];
+                if (missing[p] != Integer.MAX_VALUE && --missing[p] == 0 && !found[lhs[p]]) {
+                    found[lhs[p]] = true;
+                    queue[tail++] = lhs[p];
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return The variables reachable from the start variable through productions whose variables all generate.
+     */
+    private boolean[] reachable() {
+        boolean[] found = new boolean[numVariables];
+        int[] stack = new int[numVariables];
+        int top = 0;
+        found[0] = true;
+        stack[top++] = 0;
+        while (top > 0) {
+            int A = stack[--top];
+            for (int p = first[A]; p < first[A + 1]; p++) {
+                if (!allGenerating(p, generating)) continue;
+                for (int i = start[p]; i < start[p + 1]; i++) {
+                    int B = body[i];
+                    if (B < numVariables && !found[B]) {
+                        found[B] = true;
+                        stack[top++] = B;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+}
@@ -9,7 +9,7 @@ public class Production implements Comparable<Production> {
 
     public Production(String l, String r) {
         LHS = l;
-        RHS = r.replaceAll("λ", "");  // Eliminate the empty string
+        RHS = r.indexOf('λ') < 0 ? r : r.replace("λ", "");  // Eliminate the empty string
     }
 
     String sub(String s, int ind) {
@@ -21,7 +21,8 @@ public class Production implements Comparable<Production> {
 
     @Override
     public int hashCode() {
-        return LHS.hashCode() ^ RHS.hashCode();
+        // XOR of the two sides collides a lot when the symbols are numbered consecutively, as in generated grammars.
+        return LHS.hashCode() * 0x9E3779B9 + RHS.hashCode();
     }
 
     @Override
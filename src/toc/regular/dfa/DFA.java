@@ -1,22 +1,71 @@
 package toc.regular.dfa;
 
 import toc.Acceptor;
+import toc.TransitionFunction;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.stream.IntStream;
+import java.util.zip.CRC32;
 
 /**
  * @author Jon Bolin
  */
 public class DFA extends Acceptor {
 
+    // The most bytes mapped at once, and the smallest file scanned in parallel.
+    private static final long MAX_MAPPING = 1L << 30;
+    private static final long MIN_PARALLEL_BYTES = 1L << 20;
+
+    // Lanes are merged every LANE_STRIDE bytes. A piece with more than MAX_LANES lanes left after
+    // LANE_PROBE bytes is scanned sequentially instead.
+    private static final int LANE_STRIDE = 64;
+    private static final int MAX_LANES = 16;
+    private static final int LANE_PROBE = 1 << 16;
+
+    private static final int BYTE_TABLE_STATES = 1 << 14;
+
     private DFATransitionFunction δ;
     private Set<Integer> F;
 
+    // Compiled form of δ and F. table[q * k + index[a]] is δ(q, a).
+    private final int[] table;
+    private final int[] index;
+    private final boolean[] accepting;
+    private final int k;
+
+    // byteIndex[b] is the index of the character with value b, for scanning bytes.
+    // byteTable[q * 256 + b] is the state reached from q on byte b, or -1 if b is not in the alphabet.
+    // It is only built for DFAs with at most BYTE_TABLE_STATES states.
+    private final int[] byteIndex;
+    private int[] byteTable;
+
+    // live[q] is true if a final state can be reached from q. Built on first use.
+    private boolean[] live;
+
     public DFA(DFATransitionFunction δ, Set<Character> Σ, Set F) {
         super(Σ);
         this.δ = δ;
         this.F = F;
+
+        this.table = δ.toTable();
+        this.index = TransitionFunction.createIndex(δ.map);
+        this.k = δ.map.size();
+        this.accepting = new boolean[δ.numStates()];
+        for (int f : this.F) {
+            if (f >= 0 && f < accepting.length) accepting[f] = true;
+        }
+        this.byteIndex = new int[256];
+        for (int b = 0; b < 256; b++) byteIndex[b] = b < index.length ? index[b] : -1;
     }
 
     /**
@@ -25,11 +74,330 @@ public class DFA extends Acceptor {
      * @return
      */
     public boolean recognizes(String s) {
-        int state = 0;
-        for (char c : s.toCharArray()) {
-            state = δ.of(state, c);
+        return accepting[run(0, s, 0, s.length())];
+    }
+
+    /**
+     * Starts a scan that only keeps the current state.
+     * @return A scan of the empty string.
+     */
+    @Override
+    public Scan scan() {
+        return new Scan() {
+            private int state = 0;
+
+            @Override
+            public Scan feed(CharSequence s, int start, int end) {
+                state = run(state, s, start, end);
+                return this;
+            }
+
+            @Override
+            public boolean accepts() {
+                return accepting[state];
+            }
+        };
+    }
+
+    /**
+     * Runs the DFA over s[start..end).
+     * @param state The state to start in
+     * @return The state after the characters.
+     */
+    private int run(int state, CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            int a = c < index.length ? index[c] : -1;
+            if (a < 0) {
+                throw new RuntimeException("Character not in alphabet.");
+            }
+            state = table[state * k + a];
+        }
+        return state;
+    }
+
+    /**
+     * Tests whether the DFA recognizes the bytes between the buffer's position and limit.
+     * Each byte stands for the character with the same value, as in ISO-8859-1. The buffer's position is not changed.
+     * @param bytes The bytes to test
+     * @return true if the DFA recognizes the bytes.
+     */
+    public boolean recognizes(ByteBuffer bytes) {
+        return accepting[run(0, bytes)];
+    }
+
+    /**
+     * Tests whether the DFA recognizes the bytes of a file, as in recognizes(ByteBuffer).
+     * The file is memory mapped, so it is never copied onto the heap.
+     * @param file The file to test
+     * @return true if the DFA recognizes the contents of the file.
+     */
+    public boolean recognizes(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return accepting[run(0, channel, 0, channel.size())];
+        }
+    }
+
+    /**
+     * Tests whether the DFA recognizes the bytes of a file, scanning pieces of the file in parallel.
+     * The first piece is scanned from the initial state. Every other piece is scanned from all states at once,
+     * one lane per state, and lanes that reach the same state are merged; in most DFAs they quickly converge
+     * to a few lanes. The state maps of the pieces are then applied in order. A piece whose lanes don't
+     * converge is scanned again afterwards, from the state it is known to start in.
+     * @param file The file to test
+     * @param pool The pool to scan the pieces on
+     * @return true if the DFA recognizes the contents of the file.
+     */
+    public boolean recognizes(Path file, ForkJoinPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (pool.getParallelism() == 1 || size < MIN_PARALLEL_BYTES) {
+                return accepting[run(0, channel, 0, size)];
+            }
+            int pieces = (int) Math.max(pool.getParallelism(), (size + MAX_MAPPING - 1) / MAX_MAPPING);
+            long[] bounds = new long[pieces + 1];
+            for (int i = 0; i <= pieces; i++) bounds[i] = size * i / pieces;
+
+            List<Callable<int[]>> tasks = new ArrayList<>(pieces);
+            tasks.add(() -> new int[]{run(0, channel, bounds[0], bounds[1])});
+            for (int i = 1; i < pieces; i++) {
+                long from = bounds[i], to = bounds[i + 1];
+                tasks.add(() -> transitions(channel.map(FileChannel.MapMode.READ_ONLY, from, to - from)));
+            }
+            List<Future<int[]>> results = pool.invokeAll(tasks);
+            int state = get(results.get(0))[0];
+            for (int i = 1; i < pieces; i++) {
+                int[] map = get(results.get(i));
+                state = map != null ? map[state] : run(state, channel, bounds[i], bounds[i + 1]);
+            }
+            return accepting[state];
+        }
+    }
+
+    private static int[] get(Future<int[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Runs the DFA over the bytes [from, to) of the channel, mapping at most MAX_MAPPING bytes at a time.
+     * @return The state after the bytes.
+     */
+    private int run(int state, FileChannel channel, long from, long to) throws IOException {
+        for (long offset = from; offset < to; offset += MAX_MAPPING) {
+            long length = Math.min(MAX_MAPPING, to - offset);
+            state = run(state, channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+        }
+        return state;
+    }
+
+    /**
+     * Runs the DFA over the bytes between the buffer's position and limit.
+     * @return The state after the bytes.
+     */
+    private int run(int state, ByteBuffer bytes) {
+        int[] byteTable = byteTable();
+        if (byteTable != null) {
+            for (int i = bytes.position(), end = bytes.limit(); i < end; i++) {
+                int next = byteTable[(state << 8) | (bytes.get(i) & 0xff)];
+                if (next < 0) {
+                    throw new RuntimeException("Character not in alphabet.");
+                }
+                state = next;
+            }
+            return state;
+        }
+        for (int i = bytes.position(), end = bytes.limit(); i < end; i++) {
+            int a = byteIndex[bytes.get(i) & 0xff];
+            if (a < 0) {
+                throw new RuntimeException("Character not in alphabet.");
+            }
+            state = table[state * k + a];
+        }
+        return state;
+    }
+
+    /**
+     * @return The transition table indexed by bytes, or null if the DFA is too big for one.
+     */
+    private synchronized int[] byteTable() {
+        int n = numStates();
+        if (byteTable == null && n <= BYTE_TABLE_STATES) {
+            int[] t = new int[n << 8];
+            for (int q = 0; q < n; q++) {
+                for (int b = 0; b < 256; b++) {
+                    t[(q << 8) | b] = byteIndex[b] < 0 ? -1 : table[q * k + byteIndex[b]];
+                }
+            }
+            byteTable = t;
+        }
+        return byteTable;
+    }
+
+    /**
+     * Runs the DFA over the bytes from every state at once.
+     * Every distinct current state is a lane, and every LANE_STRIDE bytes, lanes in the same state are merged.
+     * @return map[q] is the state reached from q, or null if there were still more than MAX_LANES lanes after
+     *         LANE_PROBE bytes.
+     */
+    private int[] transitions(ByteBuffer bytes) {
+        int n = numStates();
+        int[] curr = new int[n];
+        for (int q = 0; q < n; q++) curr[q] = q;
+        int lanes = n;
+
+        // Each merge renumbers the lanes. merges[i][l] is the lane that lane l became in merge i.
+        List<int[]> merges = new ArrayList<>();
+        int[] merged = new int[n];
+        Arrays.fill(merged, -1);
+
+        int start = bytes.position(), end = bytes.limit();
+        for (int i = start; i < end; ) {
+            int stop = Math.min(end, i + LANE_STRIDE);
+            for (; i < stop; i++) {
+                int a = byteIndex[bytes.get(i) & 0xff];
+                if (a < 0) {
+                    throw new RuntimeException("Character not in alphabet.");
+                }
+                for (int l = 0; l < lanes; l++) curr[l] = table[curr[l] * k + a];
+            }
+            if (lanes == 1) continue;
+
+            int[] renumber = new int[lanes];
+            int m = 0;
+            for (int l = 0; l < lanes; l++) {
+                int q = curr[l];
+                if (merged[q] < 0) {
+                    merged[q] = m;
+                    curr[m++] = q;
+                }
+                renumber[l] = merged[q];
+            }
+            for (int l = 0; l < m; l++) merged[curr[l]] = -1;
+            if (m < lanes) {
+                merges.add(renumber);
+                lanes = m;
+            }
+            if (lanes > MAX_LANES && i - start >= LANE_PROBE) return null;
+        }
+
+        // Follow each lane through the merges, last to first.
+        int[] map = Arrays.copyOf(curr, lanes);
+        for (int i = merges.size() - 1; i >= 0; i--) {
+            int[] renumber = merges.get(i);
+            int[] previous = new int[renumber.length];
+            for (int l = 0; l < renumber.length; l++) previous[l] = map[renumber[l]];
+            map = previous;
+        }
+        return map;
+    }
+
+    /**
+     * @param q A state
+     * @param c A character
+     * @return δ(q, c).
+     */
+    public int step(int q, char c) {
+        int a = c < index.length ? index[c] : -1;
+        if (a < 0) {
+            throw new RuntimeException("Character not in alphabet.");
+        }
+        return table[q * k + a];
+    }
+
+    /**
+     * @param q A state
+     * @return true if q is a final state.
+     */
+    public boolean isAccepting(int q) {
+        return accepting[q];
+    }
+
+    /**
+     * @param q A state
+     * @return true if no final state can be reached from q, so no string is accepted after reaching it.
+     */
+    public boolean isDead(int q) {
+        return !live()[q];
+    }
+
+    /**
+     * @return Which states can reach a final state, found by searching backwards from the final states.
+     */
+    private synchronized boolean[] live() {
+        if (live == null) {
+            int n = numStates();
+            int[] start = new int[n + 1];
+            for (int i = 0; i < table.length; i++) start[table[i] + 1]++;
+            for (int q = 0; q < n; q++) start[q + 1] += start[q];
+            int[] predecessors = new int[table.length];
+            int[] fill = Arrays.copyOf(start, n);
+            for (int i = 0; i < table.length; i++) predecessors[fill[table[i]]++] = i / k;
+
+            boolean[] reached = new boolean[n];
+            int[] stack = new int[n];
+            int top = 0;
+            for (int q = 0; q < n; q++) {
+                if (accepting[q]) {
+                    reached[q] = true;
+                    stack[top++] = q;
+                }
+            }
+            while (top > 0) {
+                int q = stack[--top];
+                for (int i = start[q]; i < start[q + 1]; i++) {
+                    int p = predecessors[i];
+                    if (!reached[p]) {
+                        reached[p] = true;
+                        stack[top++] = p;
+                    }
+                }
+            }
+            live = reached;
+        }
+        return live;
+    }
+
+    /**
+     * Writes the DFA in the binary format that MappedDFA reads, so it can be loaded without parsing or minimizing.
+     * @param file The file to write, which is replaced if it exists
+     */
+    public void write(Path file) throws IOException {
+        int n = numStates();
+        long size = MappedDFA.fileBytes(k, n);
+        if (size > Integer.MAX_VALUE) throw new RuntimeException("DFA too large to write: " + n + " states.");
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MappedDFA.MAGIC).putInt(MappedDFA.VERSION).putInt(k).putInt(n).putInt(0).putInt(0);
+        for (Map.Entry<Character, Integer> e : δ.map.entrySet()) {
+            buffer.putChar(MappedDFA.HEADER_BYTES + 2 * e.getValue(), e.getKey());
+        }
+        buffer.position(MappedDFA.HEADER_BYTES + MappedDFA.alphabetBytes(k));
+        buffer.asIntBuffer().put(table);
+        int bitset = buffer.position() + 4 * table.length;
+        for (int q = 0; q < n; q++) {
+            if (accepting[q]) {
+                int offset = bitset + 4 * (q >>> 5);
+                buffer.putInt(offset, buffer.getInt(offset) | (1 << (q & 31)));
+            }
+        }
+        CRC32 crc = new CRC32();
+        buffer.position(MappedDFA.HEADER_BYTES);
+        crc.update(buffer);
+        buffer.putInt(16, (int) crc.getValue());
+
+        buffer.position(0);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) channel.write(buffer);
         }
-        return F.contains(state);
     }
 
     /**
@@ -40,10 +408,69 @@ public class DFA extends Acceptor {
     }
 
     /**
-     * Minimizes the number of states in the DFA.
+     * Minimizes the number of states in the DFA using Hopcroft's algorithm.
      * @return A minimized branch.
      */
     public DFA reduceStates() {
+        // Step 1: Remove inaccessible states
+        int n = numStates();
+        boolean[] accessible = new boolean[n];
+        int[] stack = new int[n];
+        int top = 0;
+        stack[top++] = 0;
+        accessible[0] = true;
+        while (top > 0) {
+            int curr = stack[--top];
+            for (int a = 0; a < k; a++) {
+                int next = table[curr * k + a];
+                if (!accessible[next]) {
+                    accessible[next] = true;
+                    stack[top++] = next;
+                }
+            }
+        }
+        int[] accessibleNumber = new int[n];
+        int numAccessible = 0;
+        for (int q = 0; q < n; q++) {
+            accessibleNumber[q] = accessible[q] ? numAccessible++ : -1;
+        }
+        int[] accessibleTable = new int[numAccessible * k];
+        int[] classes = new int[numAccessible];
+        for (int q = 0; q < n; q++) {
+            if (!accessible[q]) continue;
+            int p = accessibleNumber[q];
+            for (int a = 0; a < k; a++) {
+                accessibleTable[p * k + a] = accessibleNumber[table[q * k + a]];
+            }
+            // Step 2: Final and nonfinal states are distinguishable
+            classes[p] = accepting[q] ? 1 : 0;
+        }
+
+        // Step 3: Find the sets of indistinguishable states
+        int[] newStateNumber = Hopcroft.partition(accessibleTable, k, classes);
+        int newStateCount = 0;
+        for (int q : newStateNumber) newStateCount = Math.max(newStateCount, q + 1);
+
+        // Step 4: Construct a new transition function on the sets of indistinguishable states.
+        int[] transition = new int[newStateCount * k];
+        Set<Integer> finalF = new HashSet<>();
+        for (int q = 0; q < numAccessible; q++) {
+            int p = newStateNumber[q];
+            for (int a = 0; a < k; a++) {
+                transition[p * k + a] = newStateNumber[accessibleTable[q * k + a]];
+            }
+            if (classes[q] == 1) finalF.add(p);
+        }
+        DFATransitionFunction finalDelta = DFATransitionFunction.fromTable(transition, newStateCount, δ.map);
+        return new DFA(finalDelta, Σ, finalF);
+    }
+
+    /**
+     * Minimizes the number of states in the DFA by marking distinguishable pairs until a fixpoint is reached.
+     * Takes O(n² |Σ|) time per pass; kept as a reference for {@link #reduceStates()}.
+     * @return A minimized branch.
+     */
+    public DFA reduceStatesByTableFilling() {
         // Step 1: Remove inaccessible states
         Set<Integer> accessible = new HashSet<>();
         Stack<Integer> states = new Stack<>();
@@ -119,7 +546,6 @@ public class DFA extends Acceptor {
             }
             newStateNumber[i] = newStateCount++;
         }
-        System.out.println("NewStateNumber: " + Arrays.toString(newStateNumber));
 
         // Step 5: Construct a new transition function on the sets of indistinguishable states.
         List<List<Integer>> transition = new ArrayList<>();
@@ -142,7 +568,6 @@ public class DFA extends Acceptor {
                 finalF.add(newStateNumber[f]);
             }
         }
-        System.out.println("Reduced from " + numStates() + " to " + newStateCount + " states.");
         return new DFA(finalDelta, Σ, finalF);
     }
 
@@ -36,7 +36,7 @@ public class DFATransitionFunction extends RegularTransitionFunction<Integer> {
             }
             map.get(state).put(transition, result);
         }
-        Map<Character, Integer>[] arr = new Map[maxState];
+        Map<Character, Integer>[] arr = new Map[maxState + 1];
         for (int i = 0; i < arr.length; i++) {
             arr[i] = map.getOrDefault(i, new HashMap<>());
         }
@@ -83,6 +83,34 @@ public class DFATransitionFunction extends RegularTransitionFunction<Integer> {
         return new DFATransitionFunction(transition, map);
     }
 
+    /**
+     * Creates a total transition function from a dense row-major table.
+     * The number of states is given, since it can't be found from the table when the alphabet is empty.
+     * @param table The transition table. table[q * map.size() + map.get(a)] is delta(q, a).
+     * @param numStates The number of states
+     * @param map The mapping from the alphabet to the columns of the table.
+     * @return A transition function.
+     */
+    public static DFATransitionFunction fromTable(int[] table, int numStates, Map<Character, Integer> map) {
+        int k = map.size();
+        if (table.length != numStates * k) {
+            throw new RuntimeException("Busted Transition Function");
+        }
+        List<List<Integer>> transition = new ArrayList<>(numStates);
+        Integer[] row = new Integer[k];
+        for (int q = 0; q < numStates; q++) {
+            for (int a = 0; a < k; a++) {
+                int result = table[q * k + a];
+                if (result < 0 || result >= numStates) {
+                    throw new RuntimeException("Busted Transition Function");
+                }
+                row[a] = result;
+            }
+            transition.add(List.of(row));
+        }
+        return new DFATransitionFunction(Collections.unmodifiableList(transition), map);
+    }
+
     /**
      * Create a new toc.regular.dfa.DFATransitionFunction from the given mapping.
      * @param transition Transition function. transition[q][a] is delta(q, a).
@@ -111,13 +139,29 @@ public class DFATransitionFunction extends RegularTransitionFunction<Integer> {
         return result == null ? 0 : result;
     }
 
+    /**
+     * Flattens the transition function into a dense row-major table.
+     * @return An array where table[q * |Σ| + map.get(a)] is delta(q, a).
+     */
+    public int[] toTable() {
+        int k = map.size();
+        int[] table = new int[numStates() * k];
+        for (int q = 0; q < numStates(); q++) {
+            List<Integer> row = transitions.get(q);
+            for (int a = 0; a < k; a++) {
+                Integer result = row.get(a);
+                table[q * k + a] = result == null ? 0 : result;
+            }
+        }
+        return table;
+    }
+
     /**
      * Create a new transition function with only the specified states.
      * @param states The states to keep from the transition function.
      * @return A new DFATransitionFunction with a subset of the original states.
      */
     public DFATransitionFunction keepStates(Set<Integer> states) {
-        System.out.println("Keeping states " + states  + " out of " + numStates());
         int[] offsets = new int[transitions.size()];
         int currOffset = 0;
         for (int i = 0; i < offsets.length; i++) {
@@ -0,0 +1,153 @@
+package toc.regular.dfa;
+
+import java.util.Arrays;
+
+/**
+ * Hopcroft's partition refinement algorithm for DFA state minimization.
+ * Runs in O(n |Σ| log n) time using inverse transition lists and int array partitions.
+ *
+ * @author Jon Bolin
+ */
+public class Hopcroft {
+
+    /**
+     * Finds the coarsest partition of the states that refines the initial classes and is
+     * compatible with the transition function, i.e. the indistinguishable sets of states.
+     * @param table The transition table. table[q * k + a] is delta(q, a).
+     * @param k The size of the alphabet.
+     * @param classes classes[q] is the initial class of state q, in 0, 1, ..., c - 1.
+     *                States in different classes are distinguishable (e.g. final / nonfinal).
+     * @return The block number of each state. Blocks are numbered in order of their smallest state,
+     *         so the block containing state 0 is block 0.
+     */
+    public static int[] partition(int[] table, int k, int[] classes) {
+        int n = classes.length;
+        if (n == 0) return new int[0];
+
+        // Inverse transitions: the a-predecessors of q are inv[start[a * n + q]], ..., inv[start[a * n + q + 1] - 1]
+        int[] start = new int[k * n + 1];
+        for (int q = 0; q < n; q++) {
+            for (int a = 0; a < k; a++) {
+                start[a * n + table[q * k + a] + 1]++;
+            }
+        }
+        for (int i = 0; i < k * n; i++) start[i + 1] += start[i];
+        int[] inv = new int[k * n];
+        int[] fill = new int[k * n];
+        for (int q = 0; q < n; q++) {
+            for (int a = 0; a < k; a++) {
+                int key = a * n + table[q * k + a];
+                inv[start[key] + fill[key]++] = q;
+            }
+        }
+        fill = null;
+
+        // The partition. The states of block b are elems[first[b]], ..., elems[end[b] - 1].
+        int[] elems = new int[n];
+        int[] loc = new int[n];
+        int[] blockOf = new int[n];
+        int[] first = new int[n];
+        int[] end = new int[n];
+        int[] marked = new int[n];
+
+        // Step 1: Create one block per nonempty initial class.
+        int numClasses = 0;
+        for (int c : classes) numClasses = Math.max(numClasses, c + 1);
+        int[] classStart = new int[numClasses + 1];
+        for (int c : classes) classStart[c + 1]++;
+        for (int c = 0; c < numClasses; c++) classStart[c + 1] += classStart[c];
+        int[] classBlock = new int[numClasses];
+        int numBlocks = 0;
+        for (int c = 0; c < numClasses; c++) {
+            if (classStart[c] == classStart[c + 1]) continue;
+            classBlock[c] = numBlocks;
+            first[numBlocks] = classStart[c];
+            end[numBlocks] = classStart[c];
+            numBlocks++;
+        }
+        for (int q = 0; q < n; q++) {
+            int b = classBlock[classes[q]];
+            elems[end[b]] = q;
+            loc[q] = end[b]++;
+            blockOf[q] = b;
+        }
+
+        // Step 2: Every block except the largest one is a splitter.
+        int[] pending = new int[n];
+        int top = 0;
+        int largest = 0;
+        for (int b = 1; b < numBlocks; b++) {
+            if (end[b] - first[b] > end[largest] - first[largest]) largest = b;
+        }
+        for (int b = 0; b < numBlocks; b++) {
+            if (b == largest) continue;
+            pending[top++] = b;
+        }
+
+        // Step 3: Split every block by the predecessors of each splitter until there are no splitters left.
+        int[] splitter = new int[n];
+        int[] touched = new int[n];
+        while (top > 0) {
+            int b = pending[--top];
+            int size = end[b] - first[b];
+            System.arraycopy(elems, first[b], splitter, 0, size);
+
+            for (int a = 0; a < k; a++) {
+                // Move each predecessor to the front of its block.
+                int numTouched = 0;
+                for (int i = 0; i < size; i++) {
+                    int key = a * n + splitter[i];
+                    for (int j = start[key]; j < start[key + 1]; j++) {
+                        int p = inv[j];
+                        int y = blockOf[p];
+                        int dest = first[y] + marked[y];
+                        int other = elems[dest];
+                        elems[loc[p]] = other;
+                        loc[other] = loc[p];
+                        elems[dest] = p;
+                        loc[p] = dest;
+                        if (marked[y]++ == 0) touched[numTouched++] = y;
+                    }
+                }
+
+                // Split each touched block into its marked and unmarked parts.
+                for (int t = 0; t < numTouched; t++) {
+                    int y = touched[t];
+                    int m = marked[y];
+                    marked[y] = 0;
+                    int ySize = end[y] - first[y];
+                    if (m == ySize) continue;
+
+                    // The new block z gets the smaller part, so each state is relabeled O(log n) times.
+                    int z = numBlocks++;
+                    if (m <= ySize - m) {
+                        first[z] = first[y];
+                        end[z] = first[y] + m;
+                        first[y] += m;
+                    } else {
+                        first[z] = first[y] + m;
+                        end[z] = end[y];
+                        end[y] = first[y] + m;
+                    }
+                    for (int i = first[z]; i < end[z]; i++) blockOf[elems[i]] = z;
+
+                    // If y is still a splitter, both halves must be. Otherwise the smaller half, z, suffices.
+                    pending[top++] = z;
+                }
+            }
+        }
+
+        // Step 4: Number the blocks in order of their smallest state.
+        int[] blockNumber = new int[numBlocks];
+        Arrays.fill(blockNumber, -1);
+        int[] result = new int[n];
+        int count = 0;
+        for (int q = 0; q < n; q++) {
+            int b = blockOf[q];
+            if (blockNumber[b] < 0) blockNumber[b] = count++;
+            result[q] = blockNumber[b];
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,206 @@
+package toc.regular.dfa;
+
+import toc.Acceptor;
+import toc.TransitionFunction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * A DFA read straight from a file written by DFA.write, without copying its transition table onto the heap.
+ * The file is memory mapped, so opening it takes time proportional to the alphabet, not to the number of states,
+ * and the pages of the table are only read as the DFA runs.
+ *
+ * The format is big-endian, with every section aligned to 4 bytes:
+ *   magic "TDFA", version, |Σ|, number of states, CRC32 of everything after the header, 0
+ *   the characters of Σ in column order, 2 bytes each, padded with a zero char to a multiple of 4 bytes
+ *   the transition table: table[q * |Σ| + a] is δ(q, a), 4 bytes each
+ *   the accepting states as a bitset: bit q % 32 of int q / 32 is set if q is a final state
+ * State 0 is the initial state.
+ *
+ * Opening a file only checks its header and length. A file that may be corrupt should be checked with verify()
+ * before it is run, since a bad table can send the DFA to a state that doesn't exist.
+ *
+ * @author Jon Bolin
+ */
+public class MappedDFA extends Acceptor {
+
+    static final int MAGIC = 0x54444641;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+
+    private final ByteBuffer buffer;
+    private final IntBuffer table;
+    private final IntBuffer accepting;
+    private final Map<Character, Integer> map;
+    private final int[] index;
+    private final int k;
+    private final int numStates;
+
+    /**
+     * Maps a DFA file.
+     * @param file A file written by DFA.write
+     * @return The DFA in the file.
+     * @throws IOException if the file can't be read, or its header or length is wrong.
+     */
+    public static MappedDFA open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a DFA file: " + file);
+            }
+            // The mapping stays valid after the channel is closed.
+            return new MappedDFA(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file.toString());
+        }
+    }
+
+    private MappedDFA(ByteBuffer buffer, String name) throws IOException {
+        super(alphabet(buffer, name));
+        this.buffer = buffer;
+        this.k = buffer.getInt(8);
+        this.numStates = buffer.getInt(12);
+        Map<Character, Integer> map = new HashMap<>();
+        for (int a = 0; a < k; a++) map.put(buffer.getChar(HEADER_BYTES + 2 * a), a);
+        this.map = Collections.unmodifiableMap(map);
+        this.index = TransitionFunction.createIndex(map);
+        int offset = HEADER_BYTES + alphabetBytes(k);
+        this.table = slice(offset, numStates * k);
+        this.accepting = slice(offset + 4 * numStates * k, (numStates + 31) >>> 5);
+    }
+
+    /**
+     * Checks the header and length of the file, and reads the alphabet.
+     */
+    private static Set<Character> alphabet(ByteBuffer buffer, String name) throws IOException {
+        if (buffer.getInt(0) != MAGIC) throw new IOException("Not a DFA file: " + name);
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported DFA file version " + buffer.getInt(4) + ": " + name);
+        }
+        int k = buffer.getInt(8), n = buffer.getInt(12);
+        if (k < 0 || n < 1 || fileBytes(k, n) != buffer.capacity()) {
+            throw new IOException("Truncated or corrupt DFA file: " + name);
+        }
+        Set<Character> Σ = new HashSet<>();
+        for (int a = 0; a < k; a++) Σ.add(buffer.getChar(HEADER_BYTES + 2 * a));
+        if (Σ.size() != k) throw new IOException("Corrupt DFA file: " + name);
+        return Σ;
+    }
+
+    /**
+     * @return The number of bytes of the alphabet section of a file with k characters, padding included.
+     */
+    static int alphabetBytes(int k) {
+        return (2 * k + 3) & ~3;
+    }
+
+    /**
+     * @return The number of bytes of a file with k characters and n states.
+     */
+    static long fileBytes(int k, long n) {
+        return HEADER_BYTES + alphabetBytes(k) + 4 * n * k + 4 * ((n + 31) >>> 5);
+    }
+
+    private IntBuffer slice(int offset, int ints) {
+        ByteBuffer b = buffer.duplicate();
+        b.position(offset).limit(offset + 4 * ints);
+        return b.slice().asIntBuffer();
+    }
+
+    /**
+     * Checks the file against its checksum, and checks that every transition leads to a state.
+     * Reads the whole file.
+     * @return true if the file is intact.
+     */
+    public boolean verify() {
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(HEADER_BYTES);
+        crc.update(body);
+        if ((int) crc.getValue() != buffer.getInt(16)) return false;
+        for (int i = 0; i < table.limit(); i++) {
+            int q = table.get(i);
+            if (q < 0 || q >= numStates) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean recognizes(String s) {
+        return isAccepting(run(0, s, 0, s.length()));
+    }
+
+    /**
+     * Starts a scan that only keeps the current state.
+     * @return A scan of the empty string.
+     */
+    @Override
+    public Scan scan() {
+        return new Scan() {
+            private int state = 0;
+
+            @Override
+            public Scan feed(CharSequence s, int start, int end) {
+                state = run(state, s, start, end);
+                return this;
+            }
+
+            @Override
+            public boolean accepts() {
+                return isAccepting(state);
+            }
+        };
+    }
+
+    private int run(int state, CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) state = step(state, s.charAt(i));
+        return state;
+    }
+
+    /**
+     * @param q A state
+     * @param c A character
+     * @return δ(q, c).
+     */
+    public int step(int q, char c) {
+        int a = c < index.length ? index[c] : -1;
+        if (a < 0) {
+            throw new RuntimeException("Character not in alphabet.");
+        }
+        return table.get(q * k + a);
+    }
+
+    /**
+     * @param q A state
+     * @return true if q is a final state.
+     */
+    public boolean isAccepting(int q) {
+        return (accepting.get(q >>> 5) & (1 << (q & 31))) != 0;
+    }
+
+    /**
+     * @return The number of states in the DFA.
+     */
+    public int numStates() {
+        return numStates;
+    }
+
+    /**
+     * Copies the DFA onto the heap.
+     * @return A DFA with the same states and transitions.
+     */
+    public DFA toDFA() {
+        int[] t = new int[table.limit()];
+        table.duplicate().get(t);
+        Set<Integer> F = new HashSet<>();
+        for (int q = 0; q < numStates; q++) {
+            if (isAccepting(q)) F.add(q);
+        }
+        return new DFA(DFATransitionFunction.fromTable(t, numStates, map), Σ, F);
+    }
+
+}
@@ -0,0 +1,199 @@
+package toc.regular.exp;
+
+import toc.regular.dfa.DFA;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A thread-safe cache of the minimal DFAs of regular expressions, keyed by the pattern and its alphabet.
+ * The cache holds at most maxStates DFA states in total, and evicts the least recently used DFAs to stay under it.
+ * A DFA with more states than that is compiled but not kept.
+ *
+ * The lock is only held to look up and update the table, never while compiling. Threads asking for a pattern that
+ * is being compiled wait for that compilation instead of starting their own. If it fails, they all get the same
+ * exception, and the pattern isn't cached.
+ *
+ * @author Jon Bolin
+ */
+public class DFACache {
+
+    /**
+     * A pattern and the alphabet it is parsed over.
+     */
+    private static final class Key {
+
+        final String pattern;
+        final Set<Character> Σ;
+
+        Key(String pattern, Set<Character> Σ) {
+            this.pattern = pattern;
+            this.Σ = Set.copyOf(Σ);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).pattern.equals(pattern) && ((Key) other).Σ.equals(Σ);
+        }
+
+        @Override
+        public int hashCode() {
+            return pattern.hashCode() * 0x9E3779B9 + Σ.hashCode();
+        }
+    }
+
+    /**
+     * A DFA, or the compilation that will produce it. states is 0 until it is done.
+     */
+    private static final class Entry {
+
+        final CompletableFuture<DFA> dfa = new CompletableFuture<>();
+        int states;
+    }
+
+    public final int maxStates;
+
+    // In access order, so the least recently used entry comes first.
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long states;
+    private long hits, misses, evictions, compileNanos;
+
+    /**
+     * @param maxStates The most DFA states to keep, across all cached DFAs
+     */
+    public DFACache(int maxStates) {
+        if (maxStates < 0) throw new RuntimeException("Negative cache size: " + maxStates);
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * Returns the minimal DFA of the pattern, as RegularExpression.parse(pattern, Σ).toOptimizedDFA() would,
+     * compiling it only if it isn't cached.
+     * @param pattern The regular expression
+     * @param Σ The alphabet the pattern is defined over
+     * @return A minimal DFA that recognizes the language of the pattern.
+     * @throws RegularExpressionSyntaxException if the pattern is not a valid regular expression.
+     */
+    public DFA get(String pattern, Set<Character> Σ) {
+        Key key = new Key(pattern, Σ);
+        Entry entry;
+        boolean compile;
+        synchronized (this) {
+            entry = entries.get(key);
+            compile = entry == null;
+            if (compile) {
+                misses++;
+                entry = new Entry();
+                entries.put(key, entry);
+            } else {
+                hits++;
+            }
+        }
+        if (compile) return compile(key, entry);
+        try {
+            return entry.dfa.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Compiles the pattern of a new entry, and completes it for the threads waiting on it.
+     */
+    private DFA compile(Key key, Entry entry) {
+        long start = System.nanoTime();
+        DFA dfa;
+        try {
+            dfa = RegularExpression.parse(key.pattern, key.Σ).toOptimizedDFA();
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                compileNanos += System.nanoTime() - start;
+                entries.remove(key, entry);
+            }
+            entry.dfa.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (this) {
+            compileNanos += System.nanoTime() - start;
+            if (entries.get(key) == entry) {
+                if (dfa.numStates() > maxStates) {
+                    // Evicting the other DFAs wouldn't make room for it, so it isn't kept.
+                    entries.remove(key);
+                } else {
+                    entry.states = dfa.numStates();
+                    states += entry.states;
+                    evict();
+                }
+            }
+        }
+        entry.dfa.complete(dfa);
+        return dfa;
+    }
+
+    /**
+     * Evicts compiled DFAs, least recently used first, until the cache holds at most maxStates states.
+     */
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (states > maxStates && it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.states <= 0) continue;
+            states -= entry.states;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Evicts every DFA. Compilations in progress still finish, but their DFAs aren't kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        states = 0;
+    }
+
+    /**
+     * @return The number of patterns cached or being compiled.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of DFA states cached.
+     */
+    public synchronized long cachedStates() {
+        return states;
+    }
+
+    /**
+     * @return The number of times get found its pattern cached or being compiled.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of times get had to compile its pattern.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of DFAs evicted to make room.
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return The total time spent compiling, in nanoseconds.
+     */
+    public synchronized long compileNanos() {
+        return compileNanos;
+    }
+
+}
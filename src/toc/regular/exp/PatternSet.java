@@ -0,0 +1,158 @@
+package toc.regular.exp;
+
+import toc.TransitionFunction;
+import toc.regular.dfa.Hopcroft;
+import toc.regular.nfa.NFA;
+import toc.regular.nfa.NFABuilder;
+import toc.regular.nfa.SubsetConstruction;
+
+import java.util.*;
+
+/**
+ * A set of regular expressions compiled into one DFA, which finds every pattern matching a string in one pass.
+ * The patterns are compiled into one NFA with a new initial state and a λ transition to each of them, and the NFA
+ * is determinized. Each DFA state is tagged with the set of patterns whose final state it contains, and the DFA is
+ * minimized keeping states with different tags apart.
+ *
+ * @author Jon Bolin
+ */
+public class PatternSet {
+
+    public final Set<Character> Σ;
+    public final List<RegularExpression> patterns;
+
+    // table[q * k + index[a]] is δ(q, a). State q accepts the patterns in masks[tag[q]].
+    private final int[] table;
+    private final int[] index;
+    private final int k;
+    private final int[] tag;
+    private final long[][] masks;
+
+    /**
+     * Parses the patterns and compiles them into a PatternSet.
+     * @param Σ The alphabet of the patterns
+     * @param patterns The patterns. Pattern i is reported as i.
+     * @return The compiled patterns.
+     */
+    public static PatternSet parse(Set<Character> Σ, String... patterns) {
+        List<RegularExpression> list = new ArrayList<>(patterns.length);
+        for (String p : patterns) list.add(RegularExpression.parse(p, Σ));
+        return new PatternSet(list);
+    }
+
+    /**
+     * Compiles the patterns into one DFA.
+     * @param patterns The patterns, all over the same alphabet. Pattern i is reported as i.
+     */
+    public PatternSet(List<RegularExpression> patterns) {
+        if (patterns.isEmpty()) {
+            throw new RuntimeException("A pattern set needs at least one pattern.");
+        }
+        this.patterns = List.copyOf(patterns);
+        this.Σ = patterns.get(0).Σ;
+        int n = patterns.size();
+
+        // Compile every pattern behind a common initial state, remembering which final state belongs to which pattern.
+        NFABuilder builder = new NFABuilder(Σ);
+        ThompsonCompiler compiler = new ThompsonCompiler(builder);
+        int initial = builder.addState();
+        int[] finals = new int[n];
+        for (int i = 0; i < n; i++) {
+            int[] states = compiler.compile(patterns.get(i));
+            builder.addλTransition(initial, states[0]);
+            builder.addFinalState(states[1]);
+            finals[i] = states[1];
+        }
+        NFA nfa = builder.build();
+        int[] patternOf = new int[nfa.δ.numStates()];
+        Arrays.fill(patternOf, -1);
+        for (int i = 0; i < n; i++) patternOf[finals[i]] = i;
+
+        // Tag each DFA state with the patterns it accepts. Equal masks share a tag, and tag 0 accepts nothing.
+        SubsetConstruction sc = new SubsetConstruction(nfa);
+        int states = sc.numStates();
+        int words = (n + 63) >>> 6;
+        Map<List<Long>, Integer> tags = new HashMap<>();
+        List<long[]> tagMasks = new ArrayList<>();
+        tags.put(Collections.nCopies(words, 0L), 0);
+        tagMasks.add(new long[words]);
+        int[] classes = new int[states];
+        long[] mask = new long[words];
+        for (int q = 0; q < states; q++) {
+            if (!sc.isAccepting(q)) continue;
+            Arrays.fill(mask, 0);
+            for (int p : sc.states(q)) {
+                if (patternOf[p] >= 0) mask[patternOf[p] >>> 6] |= 1L << patternOf[p];
+            }
+            List<Long> key = new ArrayList<>(words);
+            for (long w : mask) key.add(w);
+            Integer t = tags.get(key);
+            if (t == null) {
+                tags.put(key, t = tagMasks.size());
+                tagMasks.add(mask.clone());
+            }
+            classes[q] = t;
+        }
+
+        // Merge the states that accept the same patterns after every string.
+        this.k = nfa.δ.map.size();
+        int[] dfaTable = sc.table();
+        int[] block = Hopcroft.partition(dfaTable, k, classes);
+        int blocks = 0;
+        for (int b : block) blocks = Math.max(blocks, b + 1);
+        this.table = new int[blocks * k];
+        this.tag = new int[blocks];
+        for (int q = 0; q < states; q++) {
+            int b = block[q];
+            tag[b] = classes[q];
+            for (int a = 0; a < k; a++) table[b * k + a] = block[dfaTable[q * k + a]];
+        }
+        this.masks = tagMasks.toArray(new long[0][]);
+        this.index = TransitionFunction.createIndex(nfa.δ.map);
+    }
+
+    /**
+     * Finds all patterns matching the string.
+     * @param s The string to test
+     * @return The set of patterns i that match all of s.
+     */
+    public BitSet matches(String s) {
+        return BitSet.valueOf(masks[tag[run(s)]]);
+    }
+
+    /**
+     * @param s The string to test
+     * @return true if any pattern matches all of s.
+     */
+    public boolean matchesAny(String s) {
+        return tag[run(s)] != 0;
+    }
+
+    private int run(String s) {
+        int state = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            int a = c < index.length ? index[c] : -1;
+            if (a < 0) {
+                throw new RuntimeException("Character not in alphabet.");
+            }
+            state = table[state * k + a];
+        }
+        return state;
+    }
+
+    /**
+     * @return The number of states in the combined DFA.
+     */
+    public int numStates() {
+        return tag.length;
+    }
+
+    /**
+     * @return The number of patterns.
+     */
+    public int size() {
+        return patterns.size();
+    }
+
+}
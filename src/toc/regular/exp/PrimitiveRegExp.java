@@ -1,9 +1,5 @@
 package toc.regular.exp;
 
-import toc.regular.nfa.NFA;
-import toc.regular.nfa.NFABuilder;
-import toc.regular.nfa.NFATransitionFunction;
-
 import java.util.*;
 
 /**
@@ -11,15 +7,15 @@ import java.util.*;
  */
 public class PrimitiveRegExp extends RegularExpression {
 
+    enum Type { EMPTY_LANGUAGE, EMPTY_STRING, SYMBOL }
+
     /**
      * The regular expression for the empty language.
      * @param Σ The alphabet set this regex is defined over
      * @return A Regular Expression that accepts nothing.
      */
     public static PrimitiveRegExp ϕ(Set<Character> Σ) {
-        NFABuilder builder = new NFABuilder(Σ);
-        builder.addState();
-        return new PrimitiveRegExp(builder.build(), Σ);
+        return new PrimitiveRegExp(Type.EMPTY_LANGUAGE, 'ϕ', Σ);
     }
 
     /**
@@ -28,9 +24,7 @@ public class PrimitiveRegExp extends RegularExpression {
      * @return A regular expression that recognizes the empty string.
      */
     public static PrimitiveRegExp λ(Set<Character> Σ) {
-        NFABuilder builder = new NFABuilder(Σ);
-        builder.addFinalState(builder.addState());
-        return new PrimitiveRegExp(builder.build(), Σ);
+        return new PrimitiveRegExp(Type.EMPTY_STRING, 'λ', Σ);
     }
 
     /**
@@ -43,23 +37,16 @@ public class PrimitiveRegExp extends RegularExpression {
         if (!Σ.contains(a)) {
             throw new RuntimeException("Primitive Character is not in alphabet!");
         }
-        NFABuilder builder = new NFABuilder(Σ);
-        int start = builder.addState();
-        int end = builder.addState();
-        builder.addTransition(start, a, end);
-        builder.addFinalState(end);
-        return new PrimitiveRegExp(builder.build(), Σ);
+        return new PrimitiveRegExp(Type.SYMBOL, a, Σ);
     }
 
-    private final NFA recognizer;
+    final Type type;
+    final char a;
 
-    private PrimitiveRegExp(NFA regcognizer, Set<Character> Σ) {
+    private PrimitiveRegExp(Type type, char a, Set<Character> Σ) {
         super(Σ);
-        this.recognizer = regcognizer;
+        this.type = type;
+        this.a = a;
     }
 
-    @Override
-    public NFA toNFA() {
-        return recognizer;
-    }
 }
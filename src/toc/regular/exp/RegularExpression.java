@@ -1,12 +1,14 @@
 package toc.regular.exp;
 
+import toc.TransitionFunction;
 import toc.regular.dfa.DFA;
 import toc.regular.exp.operations.Concatenation;
 import toc.regular.exp.operations.StarClosure;
 import toc.regular.exp.operations.Union;
 import toc.regular.nfa.NFA;
+import toc.regular.nfa.NFABuilder;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Set;
 
 /**
@@ -24,102 +26,102 @@ import java.util.Set;
  */
 public abstract class RegularExpression {
 
-    private static class Symbol {
-        RegularExpression regexp;
-        char character;
-
-        public Symbol(RegularExpression reg) {
-            this.regexp = reg;
-        }
-
-        public Symbol(char c) {
-            this.character = c;
-        }
-    }
-
     /**
-     * Parse a regular expression from a string.
+     * Parse a regular expression from a string in a single pass.
+     * Star closure binds tightest, then concatenation, then union; all of them associate to the left.
+     * The result is an expression tree; no automaton is built until it is compiled with toNFA().
      * @param s The string to parse
      * @param Σ The alphabet this regexp is defined over
      * @return A regular expression for the string.
+     * @throws RegularExpressionSyntaxException if the string is not a valid regular expression.
      */
     public static RegularExpression parse(String s, Set<Character> Σ) {
-        ArrayList<Symbol> symbols = new ArrayList<>();
+        // All nodes share one copy of the alphabet, and one node per primitive.
+        Set<Character> alphabet = Set.copyOf(Σ);
+        int[] index = TransitionFunction.createIndex(TransitionFunction.createMap(alphabet));
+        PrimitiveRegExp[] literals = new PrimitiveRegExp[alphabet.size()];
+        PrimitiveRegExp λ = null, ϕ = null;
+
+        // One frame per open parenthesis. Each frame has the union of the alternatives so far,
+        // the concatenation so far, and the last operand, which hasn't been appended yet so it can be starred.
+        RegularExpression[] union = new RegularExpression[4];
+        RegularExpression[] concatenation = new RegularExpression[4];
+        RegularExpression[] last = new RegularExpression[4];
+        int[] open = new int[4];
+        int depth = 0;
+        open[0] = -1;
+
         for (int i = 0; i < s.length(); i++) {
-            if (s.charAt(i) == '(') {
-                int parenCount = 1;
-                int currInd = i + 1;
-                while (currInd < s.length() && parenCount > 0) {
-                    if (s.charAt(currInd) == ')') parenCount--;
-                    else if (s.charAt(currInd) == '(') parenCount++;
-                    currInd++;
+            char c = s.charAt(i);
+            RegularExpression operand = null;
+            if (c == '(') {
+                if (++depth == open.length) {
+                    union = Arrays.copyOf(union, 2 * depth);
+                    concatenation = Arrays.copyOf(concatenation, 2 * depth);
+                    last = Arrays.copyOf(last, 2 * depth);
+                    open = Arrays.copyOf(open, 2 * depth);
+                }
+                union[depth] = concatenation[depth] = last[depth] = null;
+                open[depth] = i;
+                continue;
+            } else if (c == ')') {
+                if (depth == 0) {
+                    throw new RegularExpressionSyntaxException("Unbalanced parentheses", s, i);
+                }
+                operand = close(union[depth], concatenation[depth], last[depth], s, i, alphabet);
+                depth--;
+            } else if (c < index.length && index[c] >= 0) {
+                operand = literals[index[c]];
+                if (operand == null) operand = literals[index[c]] = PrimitiveRegExp.a(c, alphabet);
+            } else if (c == 'λ') {
+                operand = λ == null ? λ = PrimitiveRegExp.λ(alphabet) : λ;
+            } else if (c == 'ϕ') {
+                operand = ϕ == null ? ϕ = PrimitiveRegExp.ϕ(alphabet) : ϕ;
+            } else if (c == '*') {
+                if (last[depth] == null) {
+                    throw new RegularExpressionSyntaxException("Nothing to star", s, i);
                 }
-                if (parenCount != 0) {
-                    char[] arr = new char[i];
-                    for (int j = 0; j < i; j++) arr[j] = ' ';
-                    String spaces = new String(arr);
-                    System.err.println("Unbalanced parentheses: " + s);
-                    System.err.println("                        " + spaces + "^");
-                    throw new RuntimeException();
+                last[depth] = last[depth].star();
+                continue;
+            } else if (c == '+') {
+                RegularExpression term = append(concatenation[depth], last[depth]);
+                if (term == null) {
+                    throw new RegularExpressionSyntaxException("Missing operand", s, i);
                 }
-                symbols.add(new Symbol(parse(s.substring(i+1, currInd-1), Σ)));
-                i = currInd-1;
-            } else if (Σ.contains(s.charAt(i))) {
-                symbols.add(new Symbol(PrimitiveRegExp.a(s.charAt(i), Σ)));
-            } else if (s.charAt(i) == 'λ') {
-                symbols.add(new Symbol(PrimitiveRegExp.λ(Σ)));
-            } else if (s.charAt(i) == 'ϕ') {
-                symbols.add(new Symbol(PrimitiveRegExp.ϕ(Σ)));
-            } else if (s.charAt(i) == '*' || s.charAt(i) == '+') {
-                symbols.add(new Symbol(s.charAt(i)));
+                union[depth] = union[depth] == null ? term : union[depth].or(term);
+                concatenation[depth] = last[depth] = null;
+                continue;
             } else {
-                char[] arr = new char[i];
-                for (int j = 0; j < i; j++) arr[j] = ' ';
-                String spaces = new String(arr);
-                System.err.println("Unknown symbol: " + s);
-                System.err.println("                " + spaces + "^");
-                throw new RuntimeException();
+                throw new RegularExpressionSyntaxException("Unknown symbol", s, i);
             }
+            concatenation[depth] = append(concatenation[depth], last[depth]);
+            last[depth] = operand;
         }
-
-        // Expand the star-closures
-        for (int i = 0; i < symbols.size(); i++) {
-            if (symbols.get(i).character == '*') {
-                if (i == 0) {
-                    throw new RuntimeException("String can't start with *!");
-                }
-                System.out.println("Starring regular expression");
-                symbols.get(i - 1).regexp = symbols.get(i - 1).regexp.star();
-                symbols.remove(i);
-                i--;
-            }
+        if (depth > 0) {
+            throw new RegularExpressionSyntaxException("Unbalanced parentheses", s, open[depth]);
         }
+        return close(union[0], concatenation[0], last[0], s, s.length(), alphabet);
+    }
 
-        // Expand concatenations
-        for (int i = 0; i < symbols.size() - 1; i++) {
-            if (symbols.get(i).regexp != null && symbols.get(i + 1).regexp != null) {
-                symbols.get(i).regexp = symbols.get(i).regexp.append(symbols.get(i + 1).regexp);
-                symbols.remove(i + 1);
-                i--;
-            }
-        }
+    private static RegularExpression append(RegularExpression r1, RegularExpression r2) {
+        if (r1 == null) return r2;
+        return r2 == null ? r1 : r1.append(r2);
+    }
 
-        // Expand union
-        for (int i = 1; i < symbols.size() - 1; i++) {
-            if (symbols.get(i - 1).regexp != null && symbols.get(i).character == '+' && symbols.get(i + 1).regexp != null) {
-                symbols.get(i - 1).regexp = symbols.get(i - 1).regexp.or(symbols.get(i + 1).regexp);
-                symbols.remove(i);
-                symbols.remove(i);
-                i--;
+    /**
+     * Finishes parsing a parenthesized group, or the whole string.
+     * @return The regular expression for the group. An empty group is λ.
+     */
+    private static RegularExpression close(RegularExpression union, RegularExpression concatenation, RegularExpression last,
+                                           String s, int i, Set<Character> Σ) {
+        RegularExpression term = append(concatenation, last);
+        if (term == null) {
+            if (union != null) {
+                throw new RegularExpressionSyntaxException("Missing operand", s, i);
             }
-        }
-
-        if (symbols.size() > 1) {
-            throw new RuntimeException("Bad regexp!");
-        } else if (symbols.size() == 0) {
             return PrimitiveRegExp.λ(Σ);
         }
-        return symbols.get(0).regexp;
+        return union == null ? term : union.or(term);
     }
 
     public final Set<Character> Σ;
@@ -152,9 +154,14 @@ public abstract class RegularExpression {
     }
 
     /**
-     * @return An NFA representing this regexp.
+     * @return An NFA representing this regexp, built with Thompson's construction.
      */
-    public abstract NFA toNFA();
+    public NFA toNFA() {
+        NFABuilder builder = new NFABuilder(Σ);
+        int[] states = new ThompsonCompiler(builder).compile(this);
+        builder.addFinalState(states[1]);
+        return builder.build();
+    }
 
     /**
      * Converts the regexp to a DFA and optimizes it.
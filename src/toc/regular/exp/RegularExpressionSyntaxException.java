@@ -0,0 +1,25 @@
+package toc.regular.exp;
+
+/**
+ * Thrown when a string can't be parsed as a regular expression.
+ *
+ * @author Jon Bolin
+ */
+public class RegularExpressionSyntaxException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public final String pattern;
+    public final int position;
+
+    /**
+     * @param description What is wrong with the pattern
+     * @param pattern The pattern being parsed
+     * @param position The index in the pattern where the error was found
+     */
+    public RegularExpressionSyntaxException(String description, String pattern, int position) {
+        super(description + " at position " + position + ":\n" + pattern + "\n" + " ".repeat(position) + "^");
+        this.pattern = pattern;
+        this.position = position;
+    }
+}
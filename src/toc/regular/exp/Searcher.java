@@ -0,0 +1,308 @@
+package toc.regular.exp;
+
+import toc.TransitionFunction;
+import toc.regular.dfa.DFA;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Finds the substrings of a text that match a regular expression, leftmost-longest: the match that starts first,
+ * and of the matches starting there, the longest. findAll returns the matches that don't overlap, left to right.
+ *
+ * The search runs on the minimal DFA A of r. A backward pass over the text runs the reverse of A, started again at
+ * every position: the set of states it is in at position p is live(p), the states of A from which some prefix of
+ * the rest of the text is accepted. A match starts at p exactly when the initial state is in live(p). From a start,
+ * A is run forward while its state stays in live, which stops right after the longest match. Each character is
+ * read once by the backward pass, and at most once more by the forward runs, since the matches don't overlap.
+ * The sets of the reverse DFA are built as the pass meets them, so a search takes O(n) time once they are built,
+ * and O(|Q|) for each new set and character.
+ *
+ * @author Jon Bolin
+ */
+public class Searcher {
+
+    // The number of characters read from a Reader at a time, and the least text kept before it is searched.
+    private static final int CHUNK = 8192;
+
+    public final RegularExpression r;
+
+    // The minimal DFA of r: δ(q, a) is table[q * k + a], and the initial state is 0.
+    private final int k;
+    private final int[] index;
+    private final int[] table;
+    private final boolean[] accepting;
+    private final boolean[] dead;
+
+    // before[t * k + a] are the states q with δ(q, a) = t.
+    private final int[][] before;
+
+    /**
+     * Parses the pattern and compiles it into a Searcher.
+     * @param pattern The pattern to search for
+     * @param Σ The alphabet of the pattern and the texts
+     * @return A Searcher for the pattern.
+     */
+    public static Searcher compile(String pattern, Set<Character> Σ) {
+        return new Searcher(RegularExpression.parse(pattern, Σ));
+    }
+
+    public Searcher(RegularExpression r) {
+        this.r = r;
+        DFA dfa = r.toOptimizedDFA();
+        Map<Character, Integer> map = TransitionFunction.createMap(r.Σ);
+        this.k = map.size();
+        this.index = TransitionFunction.createIndex(map);
+        int n = dfa.numStates();
+        this.table = new int[n * k];
+        this.accepting = new boolean[n];
+        this.dead = new boolean[n];
+        int[] count = new int[n * k];
+        for (int q = 0; q < n; q++) {
+            accepting[q] = dfa.isAccepting(q);
+            dead[q] = dfa.isDead(q);
+            for (Map.Entry<Character, Integer> e : map.entrySet()) {
+                int t = dfa.step(q, e.getKey());
+                table[q * k + e.getValue()] = t;
+                count[t * k + e.getValue()]++;
+            }
+        }
+        this.before = new int[n * k][];
+        for (int i = 0; i < before.length; i++) before[i] = new int[count[i]];
+        for (int q = 0; q < n; q++) {
+            for (int a = 0; a < k; a++) {
+                int i = table[q * k + a] * k + a;
+                before[i][--count[i]] = q;
+            }
+        }
+    }
+
+    private int indexOf(char c) {
+        int a = c < index.length ? index[c] : -1;
+        if (a < 0) {
+            throw new RuntimeException("Character not in alphabet.");
+        }
+        return a;
+    }
+
+    /**
+     * Sets of states of A, numbered as they are found, with their transitions filled in as they are taken.
+     * The backward sets step to live(p) from live(p + 1); the forward sets step to the states that the runs
+     * started before p + 1 are in, dead ones left out. Each search has its own, so nothing is shared between threads.
+     */
+    private final class Subsets {
+
+        private final boolean backward;
+        private final List<BitSet> sets = new ArrayList<>();
+        private final Map<BitSet, Integer> ids = new HashMap<>();
+        private int[] next = new int[0];
+
+        Subsets(boolean backward) {
+            this.backward = backward;
+        }
+
+        int id(BitSet set) {
+            Integer id = ids.get(set);
+            if (id == null) {
+                id = sets.size();
+                sets.add(set);
+                ids.put(set, id);
+                if (next.length < sets.size() * k) {
+                    int old = next.length;
+                    next = Arrays.copyOf(next, Math.max(16, 2 * sets.size()) * k);
+                    Arrays.fill(next, old, next.length, -1);
+                }
+            }
+            return id;
+        }
+
+        /**
+         * @return The id of the set of final states, which is live at the end of the text.
+         */
+        int accepting() {
+            BitSet set = new BitSet();
+            for (int q = 0; q < accepting.length; q++) {
+                if (accepting[q]) set.set(q);
+            }
+            return id(set);
+        }
+
+        int step(int id, int a) {
+            int t = next[id * k + a];
+            if (t >= 0) return t;
+            BitSet set = sets.get(id), result = new BitSet();
+            if (backward) {
+                for (int q = 0; q < accepting.length; q++) {
+                    if (accepting[q]) result.set(q);
+                }
+                for (int p = set.nextSetBit(0); p >= 0; p = set.nextSetBit(p + 1)) {
+                    for (int q : before[p * k + a]) result.set(q);
+                }
+            } else {
+                if (!dead[table[a]]) result.set(table[a]);
+                for (int q = set.nextSetBit(0); q >= 0; q = set.nextSetBit(q + 1)) {
+                    if (!dead[table[q * k + a]]) result.set(table[q * k + a]);
+                }
+            }
+            t = id(result);
+            next[id * k + a] = t;
+            return t;
+        }
+
+        boolean contains(int id, int q) {
+            return sets.get(id).get(q);
+        }
+
+        boolean isEmpty(int id) {
+            return sets.get(id).isEmpty();
+        }
+    }
+
+    /**
+     * The backward pass over a piece s[from..to) of a text, and the forward runs from the starts it finds.
+     * No run of A started before to may be alive at to, unless to is the end of the text.
+     */
+    private final class Pass {
+
+        private final Subsets backward = new Subsets(true);
+        private final int end = backward.accepting();
+        private int[] live = new int[16];
+        private CharSequence s;
+        private int from, to;
+
+        void run(CharSequence s, int from, int to) {
+            this.s = s;
+            this.from = from;
+            this.to = to;
+            if (live.length <= to - from) live = new int[Math.max(to - from + 1, 2 * live.length)];
+            int b = end;
+            live[to - from] = b;
+            for (int p = to - 1; p >= from; p--) {
+                b = backward.step(b, indexOf(s.charAt(p)));
+                live[p - from] = b;
+            }
+        }
+
+        /**
+         * @return The first position in [i, last] where a match starts, or -1 if there is none.
+         */
+        int start(int i, int last) {
+            for (; i <= last; i++) {
+                if (backward.contains(live[i - from], 0)) return i;
+            }
+            return -1;
+        }
+
+        /**
+         * @param i A position where a match starts
+         * @return The end of the longest match starting at i.
+         */
+        int end(int i) {
+            int q = 0, end = i;
+            for (int p = i; ; ) {
+                if (accepting[q]) end = p;
+                if (p == to) return end;
+                q = table[q * k + index[s.charAt(p)]];
+                p++;
+                if (!backward.contains(live[p - from], q)) return end;
+            }
+        }
+
+        /**
+         * Passes the matches starting in [i, last] to action, and returns where the next search starts.
+         */
+        int matches(int i, int last, long offset, Consumer<long[]> action) {
+            while ((i = start(i, last)) >= 0) {
+                int e = end(i);
+                action.accept(new long[]{offset + i, offset + e});
+                i = e > i ? e : e + 1;
+            }
+            return i;
+        }
+    }
+
+    /**
+     * Finds the leftmost-longest match in s[from..].
+     * If r matches the empty string and nothing longer starts at from, the match is the empty match at from.
+     * @param s The text to search
+     * @param from Where to start searching
+     * @return {start, end} of the match, or null if there is none.
+     */
+    public int[] find(CharSequence s, int from) {
+        Pass pass = new Pass();
+        pass.run(s, from, s.length());
+        int i = pass.start(from, s.length());
+        return i < 0 ? null : new int[]{i, pass.end(i)};
+    }
+
+    /**
+     * Finds all matches in s from left to right, as in find. The matches don't overlap.
+     * After an empty match, the search resumes one character later.
+     * @param s The text to search
+     * @return {start, end} of every match, in order.
+     */
+    public List<int[]> findAll(CharSequence s) {
+        List<int[]> matches = new ArrayList<>();
+        Pass pass = new Pass();
+        pass.run(s, 0, s.length());
+        pass.matches(0, s.length(), 0, (m) -> matches.add(new int[]{(int) m[0], (int) m[1]}));
+        return matches;
+    }
+
+    /**
+     * Finds all matches in the characters read from the reader, as in findAll, and passes each one to the action.
+     * The reader is read to the end, but not closed.
+     * The text is searched a piece at a time, cut where no run of A that started in the piece is alive, so no match
+     * crosses a cut. Until there is such a place, the text has to be kept: while a longer match may still be
+     * coming, the matches inside it can't be reported.
+     * @param reader The text to search
+     * @param action Called with {start, end} of every match, in order
+     */
+    public void findAll(Reader reader, Consumer<long[]> action) throws IOException {
+        Pass pass = new Pass();
+        Subsets forward = new Subsets(false);
+        int state = forward.id(new BitSet());
+        StringBuilder text = new StringBuilder();
+        char[] chunk = new char[CHUNK];
+        // text holds the characters from offset on. cut is the last place in it where no run is alive.
+        long offset = 0;
+        int cut = 0;
+        for (int n; (n = reader.read(chunk)) >= 0; ) {
+            for (int i = 0; i < n; i++) {
+                state = forward.step(state, indexOf(chunk[i]));
+                if (forward.isEmpty(state)) cut = text.length() + i + 1;
+            }
+            text.append(chunk, 0, n);
+            if (cut >= CHUNK) {
+                pass.run(text, 0, cut);
+                pass.matches(0, cut - 1, offset, action);
+                text.delete(0, cut);
+                offset += cut;
+                cut = 0;
+            }
+        }
+        pass.run(text, 0, text.length());
+        pass.matches(0, text.length(), offset, action);
+    }
+
+    /**
+     * @param s The text to search
+     * @return true if some substring of s matches r.
+     */
+    public boolean containsMatch(CharSequence s) {
+        if (accepting[0]) return true;
+        Subsets forward = new Subsets(false);
+        int state = forward.id(new BitSet());
+        for (int i = 0; i < s.length(); i++) {
+            state = forward.step(state, indexOf(s.charAt(i)));
+            BitSet set = forward.sets.get(state);
+            for (int q = set.nextSetBit(0); q >= 0; q = set.nextSetBit(q + 1)) {
+                if (accepting[q]) return true;
+            }
+        }
+        return false;
+    }
+
+}
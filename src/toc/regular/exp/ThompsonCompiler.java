@@ -0,0 +1,153 @@
+package toc.regular.exp;
+
+import toc.regular.exp.operations.Concatenation;
+import toc.regular.exp.operations.StarClosure;
+import toc.regular.exp.operations.Union;
+import toc.regular.nfa.NFABuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles regular expressions into an NFA with Thompson's construction.
+ * Every subexpression writes its states directly into one shared NFABuilder, so no sub-automaton is ever copied
+ * and compiling takes time and memory linear in the size of the expression.
+ * The expression tree is walked with an explicit stack, so deeply nested expressions don't overflow the call stack.
+ *
+ * @author Jon Bolin
+ */
+public class ThompsonCompiler {
+
+    private final NFABuilder builder;
+
+    // The stack of subexpressions being compiled, the next step for each, and the states each one has saved so far.
+    private RegularExpression[] nodes = new RegularExpression[16];
+    private int[] steps = new int[16];
+    private int[] savedInitial = new int[16];
+    private int[] savedFinal = new int[16];
+    private int[] savedAlternative = new int[16];
+    private int top;
+
+    // The alternatives of the unions on the stack.
+    private final List<RegularExpression> alternatives = new ArrayList<>();
+    private final List<RegularExpression> gather = new ArrayList<>();
+
+    public ThompsonCompiler(NFABuilder builder) {
+        this.builder = builder;
+    }
+
+    /**
+     * Adds an NFA for the regular expression to the builder.
+     * The first state added is always the initial state.
+     * @param r The regular expression to compile
+     * @return {initial, final}: the initial and final state of the new NFA in the builder.
+     */
+    public int[] compile(RegularExpression r) {
+        if (!r.Σ.equals(builder.Σ)) {
+            throw new RuntimeException("Cannot compile a regular expression into an NFA over a different alphabet.");
+        }
+
+        // The initial and final state of the last subexpression compiled.
+        int initial = -1, last = -1;
+        push(r);
+        while (top > 0) {
+            int i = top - 1;
+            RegularExpression node = nodes[i];
+            if (node instanceof PrimitiveRegExp) {
+                PrimitiveRegExp p = (PrimitiveRegExp) node;
+                initial = builder.addState();
+                last = builder.addState();
+                if (p.type == PrimitiveRegExp.Type.EMPTY_STRING) {
+                    builder.addλTransition(initial, last);
+                } else if (p.type == PrimitiveRegExp.Type.SYMBOL) {
+                    builder.addTransition(initial, p.a, last);
+                }
+                top--;
+            } else if (node instanceof Concatenation) {
+                Concatenation c = (Concatenation) node;
+                if (steps[i] == 0) {
+                    steps[i]++;
+                    push(c.r1);
+                } else if (steps[i] == 1) {
+                    // Save r1's states and compile r2
+                    steps[i]++;
+                    savedInitial[i] = initial;
+                    savedFinal[i] = last;
+                    push(c.r2);
+                } else {
+                    // Link the final state of r1 to the initial state of r2
+                    builder.addλTransition(savedFinal[i], initial);
+                    initial = savedInitial[i];
+                    top--;
+                }
+            } else if (node instanceof Union) {
+                if (steps[i] == 0) {
+                    // Flatten nested unions into one, so long lists of alternatives don't form a chain of λ transitions.
+                    savedAlternative[i] = alternatives.size();
+                    gather.add(node);
+                    while (!gather.isEmpty()) {
+                        RegularExpression r1 = gather.remove(gather.size() - 1);
+                        if (r1 instanceof Union) {
+                            gather.add(((Union) r1).r2);
+                            gather.add(((Union) r1).r1);
+                        } else {
+                            alternatives.add(r1);
+                        }
+                    }
+                    // Add the new initial and final states
+                    savedInitial[i] = builder.addState();
+                    savedFinal[i] = builder.addState();
+                } else {
+                    // Lambda into the alternative's initial state, and out of its final state
+                    builder.addλTransition(savedInitial[i], initial);
+                    builder.addλTransition(last, savedFinal[i]);
+                }
+                int next = savedAlternative[i] + steps[i]++;
+                if (next < alternatives.size()) {
+                    push(alternatives.get(next));
+                } else {
+                    alternatives.subList(savedAlternative[i], alternatives.size()).clear();
+                    initial = savedInitial[i];
+                    last = savedFinal[i];
+                    top--;
+                }
+            } else if (node instanceof StarClosure) {
+                StarClosure s = (StarClosure) node;
+                if (steps[i] == 0) {
+                    // Add the new initial state
+                    steps[i]++;
+                    savedInitial[i] = builder.addState();
+                    push(s.r1);
+                } else {
+                    // Add the new final state and the wrapper transitions
+                    int end = builder.addState();
+                    builder.addλTransition(savedInitial[i], initial);
+                    builder.addλTransition(savedInitial[i], end);
+                    builder.addλTransition(end, savedInitial[i]);
+                    builder.addλTransition(last, end);
+                    initial = savedInitial[i];
+                    last = end;
+                    top--;
+                }
+            } else {
+                throw new RuntimeException("Unknown regular expression: " + node.getClass());
+            }
+        }
+        return new int[]{initial, last};
+    }
+
+    private void push(RegularExpression r) {
+        if (top == nodes.length) {
+            nodes = Arrays.copyOf(nodes, 2 * top);
+            steps = Arrays.copyOf(steps, 2 * top);
+            savedInitial = Arrays.copyOf(savedInitial, 2 * top);
+            savedFinal = Arrays.copyOf(savedFinal, 2 * top);
+            savedAlternative = Arrays.copyOf(savedAlternative, 2 * top);
+        }
+        nodes[top] = r;
+        steps[top] = 0;
+        top++;
+    }
+
+}
@@ -1,19 +1,13 @@
 package toc.regular.exp.operations;
 
 import toc.regular.exp.RegularExpression;
-import toc.regular.nfa.NFA;
-import toc.regular.nfa.NFABuilder;
-import toc.regular.nfa.NFATransitionFunction;
-
-import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * @author Jon Bolin
  */
 public class Concatenation extends RegularExpression {
 
-    private RegularExpression r1, r2;
+    public final RegularExpression r1, r2;
 
     public Concatenation(RegularExpression r1, RegularExpression r2) {
         super(r1.Σ);
@@ -23,28 +17,4 @@ public class Concatenation extends RegularExpression {
         this.r1 = r1;
         this.r2 = r2;
     }
-
-    @Override
-    public NFA toNFA() {
-        NFA nfa1 = r1.toNFA();
-        NFA nfa2 = r2.toNFA();
-
-        NFABuilder builder = new NFABuilder(Σ);
-
-        // Add the nfa's
-        builder.addNFA(nfa1);
-        int nfa2offset = builder.addNFA(nfa2);
-
-        // Link the final states of nfa1 to the initial state of nfa2
-        for (int f : nfa1.F) {
-            builder.addλTransition(f, nfa2offset);
-        }
-
-        // Add nfa2's final states
-        for (int f : nfa2.F) {
-            builder.addFinalState(f + nfa2offset);
-        }
-
-        return builder.build();
-    }
 }
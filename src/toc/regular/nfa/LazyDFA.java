@@ -0,0 +1,229 @@
+package toc.regular.nfa;
+
+import toc.Acceptor;
+
+import java.util.*;
+
+/**
+ * An acceptor that converts an NFA into a DFA lazily, while it scans its input.
+ * The DFA states discovered so far are cached in a table of bounded size, which is flushed when it fills up.
+ * If the cache thrashes, i.e. it fills up again before scanning a few characters per cached state,
+ * the rest of the input is scanned by stepping the NFA directly.
+ *
+ * @author Jon Bolin
+ */
+public class LazyDFA extends Acceptor {
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    // The cache is considered to be thrashing if it is flushed after fewer than this many characters per state.
+    private static final int MIN_CHARS_PER_STATE = 10;
+
+    private final NFASimulator sim;
+    private final int capacity;
+    private final int k;
+
+    // The cached DFA states. next[id * k + a] is δ(id, a), or -1 if that transition has not been computed yet.
+    private final Map<StateSet, Integer> ids;
+    private final StateSet[] sets;
+    private final int[] next;
+    private final boolean[] accepting;
+    private final boolean[] dead;
+    private int size;
+    private int start = -1;
+    private long flushes;
+
+    // The number of characters scanned since the last flush.
+    private long scanned;
+
+    public LazyDFA(NFA nfa) {
+        this(nfa, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param nfa The NFA to recognize the language of
+     * @param capacity The maximum number of DFA states to cache
+     */
+    public LazyDFA(NFA nfa, int capacity) {
+        super(nfa.Σ);
+        if (capacity < 2) {
+            throw new RuntimeException("The cache must hold at least two states.");
+        }
+        this.sim = nfa.simulator();
+        this.capacity = capacity;
+        this.k = sim.k;
+        this.ids = new HashMap<>();
+        this.sets = new StateSet[capacity];
+        this.next = new int[capacity * k];
+        this.accepting = new boolean[capacity];
+        this.dead = new boolean[capacity];
+    }
+
+    @Override
+    public boolean recognizes(String s) {
+        return scan().feed(s).accepts();
+    }
+
+    /**
+     * Starts a scan that only keeps the current DFA state.
+     * @return A scan of the empty string.
+     */
+    @Override
+    public synchronized Scan scan() {
+        return new LazyScan();
+    }
+
+    /**
+     * A scan through the cached DFA. The scan remembers the NFA states of its current DFA state, so it can find
+     * the state again if the cache was flushed between feeds.
+     */
+    private class LazyScan extends Scan {
+
+        // The current DFA state, which is only valid if there has been no flush since epoch.
+        private int state;
+        private StateSet key;
+        private long epoch;
+        private boolean accepts;
+
+        // The current set of NFA states, once the cache thrashed and the scan switched to stepping the NFA.
+        private long[] states;
+
+        LazyScan() {
+            state = start();
+            key = sets[state];
+            epoch = flushes;
+            accepts = accepting[state];
+        }
+
+        @Override
+        public Scan feed(CharSequence s, int start, int end) {
+            synchronized (LazyDFA.this) {
+                if (states != null) {
+                    states = sim.run(states, sim.newSet(), s, start, end);
+                    return this;
+                }
+                long[] curr = sim.newSet();
+                long[] result = sim.newSet();
+                int q = epoch == flushes ? state : restore(key);
+                int from = start;
+                for (int i = start; i < end; i++) {
+                    if (dead[q]) {
+                        // The scan stays dead, but the characters must still be in the alphabet.
+                        sim.checkAlphabet(s, i, end);
+                        break;
+                    }
+                    int a = sim.indexOf(s.charAt(i));
+                    if (a < 0) {
+                        throw new RuntimeException("Character not in alphabet.");
+                    }
+                    int t = next[q * k + a];
+                    if (t < 0) {
+                        // Determinize the transition.
+                        sets[q].toBits(curr);
+                        sim.step(curr, a, result);
+                        StateSet set = StateSet.of(result);
+                        Integer id = ids.get(set);
+                        boolean flushed = false;
+                        if (id == null) {
+                            if (size == capacity) {
+                                scanned += i - from;
+                                from = i;
+                                if (scanned < (long) MIN_CHARS_PER_STATE * capacity) {
+                                    states = sim.run(result, curr, s, i + 1, end);
+                                    return this;
+                                }
+                                flush();
+                                flushed = true;
+                            }
+                            id = add(set, result);
+                        }
+                        // The current state is gone after a flush, so there is nothing to record the transition in.
+                        if (!flushed) next[q * k + a] = id;
+                        t = id;
+                    }
+                    q = t;
+                }
+                scanned += end - from;
+                state = q;
+                key = sets[q];
+                epoch = flushes;
+                accepts = accepting[q];
+                return this;
+            }
+        }
+
+        @Override
+        public boolean accepts() {
+            synchronized (LazyDFA.this) {
+                return states != null ? sim.accepts(states) : accepts;
+            }
+        }
+    }
+
+    /**
+     * @return The initial DFA state, which is added to the cache again if a flush evicted it.
+     */
+    private int start() {
+        if (start < 0) {
+            if (size == capacity) flush();
+            long[] initial = sim.start();
+            start = add(StateSet.of(initial), initial);
+        }
+        return start;
+    }
+
+    /**
+     * Finds the DFA state with the given NFA states, adding it to the cache if it was evicted.
+     */
+    private int restore(StateSet key) {
+        Integer id = ids.get(key);
+        if (id != null) return id;
+        if (size == capacity) flush();
+        long[] bits = sim.newSet();
+        key.toBits(bits);
+        return add(key, bits);
+    }
+
+    /**
+     * Adds a DFA state to the cache. The cache must not be full.
+     * @param key The NFA states in the DFA state
+     * @param bits The same states as a bitset
+     * @return The id of the new DFA state.
+     */
+    private int add(StateSet key, long[] bits) {
+        int id = size++;
+        ids.put(key, id);
+        sets[id] = key;
+        accepting[id] = sim.accepts(bits);
+        dead[id] = sim.isEmpty(bits);
+        Arrays.fill(next, id * k, id * k + k, -1);
+        return id;
+    }
+
+    /**
+     * Evicts every state from the cache.
+     */
+    private void flush() {
+        ids.clear();
+        Arrays.fill(sets, 0, size, null);
+        size = 0;
+        start = -1;
+        scanned = 0;
+        flushes++;
+    }
+
+    /**
+     * @return The number of DFA states currently cached.
+     */
+    public synchronized int cachedStates() {
+        return size;
+    }
+
+    /**
+     * @return The number of times the cache has been flushed.
+     */
+    public synchronized long flushes() {
+        return flushes;
+    }
+
+}
@@ -3,10 +3,10 @@ package toc.regular.nfa;
 import toc.grammar.Production;
 import toc.Acceptor;
 import toc.regular.dfa.DFA;
-import toc.regular.dfa.DFATransitionFunction;
 import toc.regular.grammar.RightLinearGrammar;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author Jon Bolin
@@ -16,96 +16,73 @@ public class NFA extends Acceptor {
     public final NFATransitionFunction δ;
     public final Set<Integer> F;
 
+    // Built on first use, since it computes the λ-closure of every state.
+    private NFASimulator simulator;
+
     public NFA(NFATransitionFunction δ, Set<Character> Σ, Set<Integer> F) {
         super(Σ);
         this.δ = δ;
         this.F = Set.copyOf(F);
     }
 
+    /**
+     * @return A simulator that steps sets of this NFA's states as bitsets.
+     */
+    NFASimulator simulator() {
+        if (simulator == null) simulator = new NFASimulator(δ, F);
+        return simulator;
+    }
+
     public boolean recognizes(String s) {
-        Set<Integer> currStates = δ.expandLambda(new HashSet<>(Arrays.asList(0)));
-        Set<Integer> nextStates = new HashSet<>();
-        Set<Integer> tmp;
-        for (char c : s.toCharArray()) {
-            for (Integer q : currStates) {
-                nextStates.addAll(δ.of(q, c));
-            }
-            tmp = currStates;
-            currStates = nextStates;
-            nextStates = tmp;
-            nextStates.clear();
-        }
-        System.out.println("Resulting States: " + currStates);
-        currStates.retainAll(F);
-        return currStates.size() > 0;
+        NFASimulator sim = simulator();
+        return sim.accepts(sim.run(sim.start(), sim.newSet(), s, 0, s.length()));
     }
 
     /**
-     * Converts this NFA into an equivalent DFA.
-     * @return The reulting DFA.
+     * Starts a scan that only keeps the current set of states.
+     * @return A scan of the empty string.
      */
-    public DFA convertToDFA() {
-        // A set of the states yet to be expanded.
-        Set<HashSet<Integer>> newStates = new HashSet<>();
-
-        // Add the initial state
-        HashSet<Integer> initialState = new HashSet<>(Arrays.asList(0));
-        newStates.add(initialState);
-
-        // Maps the current set of states to a state name.
-        HashMap<HashSet<Integer>, Integer> stateNames = new HashMap<>();
-        stateNames.put(initialState, 0);
-
-        // The transition function for the DFA
-        ArrayList<List<Integer>> transitionFunction = new ArrayList<>();
-        transitionFunction.add(new ArrayList<>(Arrays.asList(new Integer[Σ.size()]))); // q1 is the initial state
-
-        while (newStates.size() > 0) {
-            HashSet<Integer> currState = newStates.iterator().next();
-            //System.out.println("Expanding state " + stateNames.get(currState) + ": " + currState);
-            int currStateName = stateNames.get(currState);
-            for (char a : Σ) {
-                HashSet<Integer> nextState = new HashSet<>();
-                for (int q : currState) {
-                    nextState.addAll(δ.of(q, a));
-                }
-                if (!stateNames.containsKey(nextState)) {
-                    stateNames.put(nextState, stateNames.size());
-                    newStates.add(nextState);
-                    transitionFunction.add(new ArrayList<>(Arrays.asList(new Integer[Σ.size()]))); // Define this state's transitions
+    @Override
+    public Scan scan() {
+        NFASimulator sim = simulator();
+        return new Scan() {
+            private long[] states = sim.start();
+            private long[] spare = sim.newSet();
+
+            @Override
+            public Scan feed(CharSequence s, int start, int end) {
+                long[] result = sim.run(states, spare, s, start, end);
+                if (result != states) {
+                    spare = states;
+                    states = result;
                 }
-                //System.out.println(currStateName + " " + a + "  " + stateNames.get(nextState) + " " + nextState);
-                transitionFunction.get(currStateName).set(δ.map.get(a), stateNames.get(nextState));  // Map from this state to next
+                return this;
             }
-            newStates.remove(currState);
-        }
-
-        Set<Integer> finalStates = new HashSet<>();
 
-        // Create the set of final states. Destroys information about state names.
-        for (HashSet<Integer> state : stateNames.keySet()) {
-            int stateNumber = stateNames.get(state);
-            //System.out.print(stateNumber + ": " + state);
-            state.retainAll(F);
-            //System.out.println("\t" + state);
-            if (state.size() > 0) {
-                finalStates.add(stateNumber);
+            @Override
+            public boolean accepts() {
+                return sim.accepts(states);
             }
-        }
+        };
+    }
 
-        // Add lambda to the DFA if it's in the language.
-        if (this.recognizes("")) {
-            finalStates.add(0);
-        }
+    /**
+     * Converts this NFA into an equivalent DFA by the subset construction.
+     * State 0 of the DFA is the λ-closure of the initial state.
+     * @return The resulting DFA.
+     */
+    public DFA convertToDFA() {
+        return new SubsetConstruction(this).toDFA();
+    }
 
-        //System.out.println("Final States: " + finalStates);
-        List<List<Integer>> transition = new ArrayList<>();
-        for (int i = 0; i < transitionFunction.size(); i++) {
-            transition.add(List.copyOf(transitionFunction.get(i)));
-            //System.out.println(Arrays.toString(transition[i]));
-        }
-        DFATransitionFunction δ = DFATransitionFunction.createTotalTransitionFunction(transition, this.δ.map);
-        return new DFA(δ, Σ, finalStates);
+    /**
+     * Converts this NFA into an equivalent DFA by the subset construction, expanding states in parallel.
+     * The result is the same DFA as convertToDFA(), with the same state numbers.
+     * @param pool The pool to expand states on
+     * @return The resulting DFA.
+     */
+    public DFA convertToDFA(ForkJoinPool pool) {
+        return new SubsetConstruction(this, pool).toDFA();
     }
 
     private char getStateName(HashMap<Integer, Character> variables, int state) {
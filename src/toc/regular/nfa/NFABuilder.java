@@ -1,26 +1,33 @@
 package toc.regular.nfa;
 
-import toc.regular.TransitionFunction;
+import toc.TransitionFunction;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * A class to build an NFA.
+ * Transitions are appended to primitive arrays, so adding states and transitions takes amortized constant time.
  *
  * @author Jon Bolin
  */
 public class NFABuilder {
 
-    private List<Set<Integer>> λ;
-    private List<List<Set<Integer>>> δ;
+    private static final Set<Integer> EMPTY = Set.of();
+
+    // Transition i goes from from[i] to to[i] on the symbol with index symbol[i], or on λ if symbol[i] is -1.
+    private int[] from;
+    private int[] symbol;
+    private int[] to;
+    private int numTransitions;
+    private int numStates;
     private Set<Integer> F;
     public final Set<Character> Σ;
     public final Map<Character, Integer> map;
 
     public NFABuilder(Set<Character> Σ) {
-        δ = new ArrayList<>();
-        λ = new ArrayList<>();
+        from = new int[16];
+        symbol = new int[16];
+        to = new int[16];
         F = new HashSet<>();
         this.Σ = Σ;
         this.map = TransitionFunction.createMap(Σ);
@@ -31,29 +38,59 @@ public class NFABuilder {
      * @return An NFA with the states and transitions build using this NFABuilder.
      */
     public NFA build() {
-        List<List<Set<Integer>>> delta = δ.stream()
-                .map((l) -> Collections.unmodifiableList(l.stream()
-                        .map(NFATransitionFunction.MAKE_UNMODIFIABLE)
-                        .collect(Collectors.toList())))
-                .collect(Collectors.toList());
-        List<Set<Integer>> lambda = Collections.unmodifiableList(λ.stream()
-                .map(NFATransitionFunction.MAKE_UNMODIFIABLE)
-                .collect(Collectors.toList()));
-        NFATransitionFunction nfaδ = NFATransitionFunction.createNFATransitionFunction(delta, lambda, map);
+        int k = map.size();
+
+        // Sort the transitions by start state and symbol. λ transitions go in column k.
+        int[] start = new int[numStates * (k + 1) + 1];
+        for (int i = 0; i < numTransitions; i++) start[column(i, k) + 1]++;
+        for (int i = 0; i < numStates * (k + 1); i++) start[i + 1] += start[i];
+        int[] sorted = new int[numTransitions];
+        int[] fill = Arrays.copyOf(start, start.length - 1);
+        for (int i = 0; i < numTransitions; i++) sorted[fill[column(i, k)]++] = to[i];
+
+        List<List<Set<Integer>>> delta = new ArrayList<>(numStates);
+        List<Set<Integer>> lambda = new ArrayList<>(numStates);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Set<Integer>[] row = new Set[k];
+        for (int q = 0; q < numStates; q++) {
+            for (int a = 0; a < k; a++) {
+                row[a] = toSet(sorted, start[q * (k + 1) + a], start[q * (k + 1) + a + 1]);
+            }
+            delta.add(List.of(row));
+            lambda.add(toSet(sorted, start[q * (k + 1) + k], start[q * (k + 1) + k + 1]));
+        }
+        NFATransitionFunction nfaδ = NFATransitionFunction.createNFATransitionFunction(
+                Collections.unmodifiableList(delta), Collections.unmodifiableList(lambda), map);
         return new NFA(nfaδ, Σ, F);
     }
 
+    private int column(int i, int k) {
+        return from[i] * (k + 1) + (symbol[i] < 0 ? k : symbol[i]);
+    }
+
+    private static Set<Integer> toSet(int[] states, int start, int end) {
+        if (start == end) return EMPTY;
+        Arrays.sort(states, start, end);
+        Integer[] arr = new Integer[end - start];
+        int size = 0;
+        for (int i = start; i < end; i++) {
+            if (i == start || states[i] != states[i - 1]) arr[size++] = states[i];
+        }
+        return Set.of(size == arr.length ? arr : Arrays.copyOf(arr, size));
+    }
+
     /**
      * Adds an empty state with no transitions.
      */
     public int addState() {
-        λ.add(new HashSet<>());
-        ArrayList<Set<Integer>> newTransition = new ArrayList<>();
-        for (int i = 0; i < Σ.size(); i++) {
-            newTransition.add(new HashSet<>());
-        }
-        δ.add(newTransition);
-        return δ.size() - 1;
+        return numStates++;
+    }
+
+    /**
+     * @return The number of states added so far.
+     */
+    public int numStates() {
+        return numStates;
     }
 
     /**
@@ -63,7 +100,7 @@ public class NFABuilder {
      * @param p The resulting state
      */
     public void addTransition(int q, char a, int p) {
-        δ.get(q).get(map.get(a)).add(p);
+        add(q, map.get(a), p);
     }
 
     /**
@@ -72,7 +109,22 @@ public class NFABuilder {
      * @param p The resulting state
      */
     public void addλTransition(int q, int p) {
-        λ.get(q).add(p);
+        add(q, -1, p);
+    }
+
+    private void add(int q, int a, int p) {
+        if (q < 0 || q >= numStates || p < 0 || p >= numStates) {
+            throw new RuntimeException("No such state: " + (q < 0 || q >= numStates ? q : p));
+        }
+        if (numTransitions == from.length) {
+            from = Arrays.copyOf(from, 2 * numTransitions);
+            symbol = Arrays.copyOf(symbol, 2 * numTransitions);
+            to = Arrays.copyOf(to, 2 * numTransitions);
+        }
+        from[numTransitions] = q;
+        symbol[numTransitions] = a;
+        to[numTransitions] = p;
+        numTransitions++;
     }
 
     /**
@@ -89,40 +141,32 @@ public class NFABuilder {
      * @return The offset for each state. i.e., the state number in this NFA = the state number in the original + offset
      */
     public int addNFA(NFA nfa) {
-        int priorSize = δ.size();
+        int priorSize = numStates;
+        numStates += nfa.δ.numStates();
         for (int i = 0; i < nfa.δ.numStates(); i++) {
-            List<Set<Integer>> curr = new ArrayList<>();
-            for (Set<Integer> set : nfa.δ.transitions.get(i)) {
-                Set<Integer> currSet = new HashSet<>();
-                if (set != null) {
-                    for (int j : set) {
-                        currSet.add(j + priorSize);
-                    }
+            for (int a = 0; a < nfa.δ.map.size(); a++) {
+                for (int j : nfa.δ.moves(i, a)) {
+                    add(i + priorSize, a, j + priorSize);
                 }
-                curr.add(currSet);
             }
-            δ.add(curr);
-        }
-        for (Set<Integer> set : nfa.δ.λ) {
-            Set<Integer> currSet = new HashSet<>();
-            for (int j : set) {
-                currSet.add(j + priorSize);
+            for (int j : nfa.δ.λ.get(i)) {
+                add(i + priorSize, -1, j + priorSize);
             }
-            λ.add(currSet);
         }
         return priorSize;
     }
 
     @Override
     public String toString() {
+        NFA nfa = build();
         String s = "";
         s += "δ: \n";
-        for (int i = 0; i < δ.size(); i++) {
-            s += "   " + i + ": " + δ.get(i) + "\n";
+        for (int i = 0; i < numStates; i++) {
+            s += "   " + i + ": " + nfa.δ.transitions.get(i) + "\n";
         }
         s += "λ: \n";
-        for (int i = 0; i < λ.size(); i++) {
-            s += "   " + i + ": " + λ.get(i) + "\n";
+        for (int i = 0; i < numStates; i++) {
+            s += "   " + i + ": " + nfa.δ.λ.get(i) + "\n";
         }
         s += "F: " + F;
         return s;
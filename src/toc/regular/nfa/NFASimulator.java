@@ -0,0 +1,189 @@
+package toc.regular.nfa;
+
+import toc.TransitionFunction;
+
+import java.util.Set;
+
+/**
+ * Simulates an NFA on bitsets of states.
+ * A step adds the λ-closure of each state it reaches with NFATransitionFunction.addClosure, which skips states
+ * already in the result, whose closures are in it too. The closures come from the NFA, which keeps them in memory
+ * linear in its size even for NFAs such as long chains of stars, where the closures overlap, and the closures it
+ * stores whole are ORed in directly. Closures with more than
+ * states / 64 states are also kept here as long[] bitsets, shared by a component and ORed in word by word, while they
+ * fit in 2 · states + 64 words.
+ *
+ * @author Jon Bolin
+ */
+class NFASimulator {
+
+    final int numStates;
+    final int words;
+    final int k;
+    private final int[] index;
+    private final NFATransitionFunction δ;
+
+    // The λ-closure of q is the bitset rows[closureIndex(q)], or else the array closure[q], or if both are null,
+    // is added by δ.addClosure.
+    // moves[q * k + a] are the states reached from q on a, before λ-closure.
+    private final long[][] rows;
+    private final int[][] closure;
+    private final int[][] moves;
+    private final long[] start;
+    private final long[] finals;
+
+    // Each thread walks the components with its own stack.
+    private final ThreadLocal<int[]> stacks;
+
+    NFASimulator(NFATransitionFunction δ, Set<Integer> F) {
+        this.δ = δ;
+        this.numStates = δ.numStates();
+        this.words = (numStates + 63) >>> 6;
+        this.k = δ.map.size();
+        this.index = TransitionFunction.createIndex(δ.map);
+        this.stacks = ThreadLocal.withInitial(() -> new int[δ.numClosures()]);
+
+        this.moves = new int[numStates * k][];
+        for (int q = 0; q < numStates; q++) {
+            for (int a = 0; a < k; a++) moves[q * k + a] = δ.moves(q, a);
+        }
+
+        this.closure = new int[numStates][];
+        for (int q = 0; q < numStates; q++) closure[q] = δ.storedClosure(q);
+
+        // Every closure tried costs a row, so finding the big ones takes time linear in the size of the NFA too.
+        this.rows = new long[δ.numClosures()][];
+        long budget = 2L * numStates + 64;
+        for (int q = 0; q < numStates && budget >= words; q++) {
+            int c = δ.closureIndex(q);
+            if (rows[c] != null) continue;
+            long[] row = new long[words];
+            δ.addClosure(q, row, null, 0, stacks.get());
+            int size = 0;
+            for (long w : row) size += Long.bitCount(w);
+            budget -= words;
+            if (size > words) rows[c] = row;
+        }
+
+        this.start = new long[words];
+        if (numStates > 0) δ.addClosure(0, start, null, 0, stacks.get());
+        this.finals = new long[words];
+        for (int f : F) finals[f >>> 6] |= 1L << f;
+    }
+
+    /**
+     * @return An empty set of states.
+     */
+    long[] newSet() {
+        return new long[words];
+    }
+
+    /**
+     * @return A new set containing the λ-closure of the initial state.
+     */
+    long[] start() {
+        return start.clone();
+    }
+
+    /**
+     * @param c A character
+     * @return The alphabet index of c, or -1 if c is not in the alphabet.
+     */
+    int indexOf(char c) {
+        return c < index.length ? index[c] : -1;
+    }
+
+    /**
+     * Computes the λ-closed set of states reachable from curr on the symbol a.
+     * @param curr A λ-closed set of states
+     * @param a The alphabet index of the symbol
+     * @param next The set to store the result in. Its previous contents are discarded.
+     */
+    void step(long[] curr, int a, long[] next) {
+        step(curr, a, next, stacks.get());
+    }
+
+    private void step(long[] curr, int a, long[] next, int[] stack) {
+        for (int w = 0; w < words; w++) next[w] = 0;
+        for (int w = 0; w < words; w++) {
+            long bits = curr[w];
+            while (bits != 0) {
+                int q = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                for (int p : moves[q * k + a]) {
+                    // The closure of p is already in next if p is.
+                    if ((next[p >>> 6] & (1L << p)) != 0) continue;
+                    long[] row = rows[δ.closureIndex(p)];
+                    if (row != null) {
+                        for (int i = 0; i < words; i++) next[i] |= row[i];
+                    } else if (closure[p] != null) {
+                        for (int r : closure[p]) next[r >>> 6] |= 1L << r;
+                    } else {
+                        δ.addClosure(p, next, null, 0, stack);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Steps a set of states over the characters s[start..end).
+     * Once the set is empty it stays empty, so the rest of the characters are only checked against the alphabet.
+     * @param curr The set of states before the characters
+     * @param spare A set to use as scratch space
+     * @return curr or spare, whichever holds the set of states after the characters.
+     */
+    long[] run(long[] curr, long[] spare, CharSequence s, int start, int end) {
+        int[] stack = stacks.get();
+        long[] tmp;
+        for (int i = start; i < end; i++) {
+            if (isEmpty(curr)) {
+                checkAlphabet(s, i, end);
+                break;
+            }
+            int a = indexOf(s.charAt(i));
+            if (a < 0) {
+                throw new RuntimeException("Character not in alphabet.");
+            }
+            step(curr, a, spare, stack);
+            tmp = curr;
+            curr = spare;
+            spare = tmp;
+        }
+        return curr;
+    }
+
+    /**
+     * Throws if one of the characters s[start..end) is not in the alphabet.
+     */
+    void checkAlphabet(CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (indexOf(s.charAt(i)) < 0) {
+                throw new RuntimeException("Character not in alphabet.");
+            }
+        }
+    }
+
+    /**
+     * @param set A set of states
+     * @return true if the set contains a final state.
+     */
+    boolean accepts(long[] set) {
+        for (int w = 0; w < words; w++) {
+            if ((set[w] & finals[w]) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param set A set of states
+     * @return true if the set has no states.
+     */
+    boolean isEmpty(long[] set) {
+        for (int w = 0; w < words; w++) {
+            if (set[w] != 0) return false;
+        }
+        return true;
+    }
+
+}
@@ -1,5 +1,6 @@
 package toc.regular.nfa;
 
+import toc.StronglyConnectedComponents;
 import toc.regular.RegularTransitionFunction;
 
 import java.util.*;
@@ -72,6 +73,18 @@ public class NFATransitionFunction extends RegularTransitionFunction<Set<Integer
 
     public final List<Set<Integer>> λ;
 
+    // The states of the strongly connected components of the λ graph: component c holds
+    // members[start[c]..start[c + 1]), and has λ transitions into the components after[afterStart[c]..afterStart[c + 1]).
+    // The closure of a state is its component's members and the closures of the components after it. closures[c] is
+    // the closure of c as a sorted array, if it was stored up front or asked for by closure(), otherwise null.
+    private int[] closureIndex;
+    private int[] start, members;
+    private int[] afterStart, after;
+    private int[][] closures;
+
+    // moves[q * |Σ| + a] are the states reached from q on the symbol with index a, before λ-closure.
+    private int[][] moves;
+
     /**
      * Create a new toc.regular.dfa.DFATransitionFunction from the given mapping.
      * @param transition Transition function. transition[q][a] is delta(q, a).
@@ -80,48 +93,221 @@ public class NFATransitionFunction extends RegularTransitionFunction<Set<Integer
     private NFATransitionFunction(Map<Character, Set<Integer>>[] transition, List<Set<Integer>> λ, Set<Character> Σ) {
         super(transition, Σ, MAKE_UNMODIFIABLE);
         this.λ = Collections.unmodifiableList(λ.stream().map(MAKE_UNMODIFIABLE).collect(Collectors.toList()));
+        precompute();
     }
 
     private NFATransitionFunction(List<List<Set<Integer>>> transition, List<Set<Integer>> λ, Map<Character, Integer> map) {
         super(transition, map);
         this.λ = λ;
+        precompute();
     }
 
-    public Set<Integer> expandLambda(Set<Integer> states) {
-        // Expand out by lambda transitions.
-        Set<Integer> startStates = new HashSet<>();
-        startStates.addAll(states);
-        Stack<Integer> stack = new Stack<>();
-        stack.addAll(states);
-        while (!stack.isEmpty()) {
-            int q = stack.pop();
-            for (int p : δ[q].get(q)) {
-                if (!startStates.contains(p)) {
-                    startStates.add(p);
-                    stack.push(p);
+    /**
+     * Computes the moves of every state, and condenses the λ graph into its strongly connected components.
+     * Takes time and memory linear in the size of the NFA.
+     */
+    private void precompute() {
+        int n = numStates();
+        int k = map.size();
+        moves = new int[n * k][];
+        for (int q = 0; q < n; q++) {
+            for (int a = 0; a < k; a++) {
+                moves[q * k + a] = toArray(transitions.get(q).get(a));
+            }
+        }
+
+        int[][] adjacency = new int[n][];
+        for (int q = 0; q < n; q++) {
+            adjacency[q] = toArray(q < λ.size() ? λ.get(q) : null);
+        }
+        closureIndex = StronglyConnectedComponents.label(adjacency);
+        int numComponents = 0;
+        for (int c : closureIndex) numComponents = Math.max(numComponents, c + 1);
+
+        // Group the states by component.
+        start = new int[numComponents + 1];
+        for (int c : closureIndex) start[c + 1]++;
+        for (int c = 0; c < numComponents; c++) start[c + 1] += start[c];
+        members = new int[n];
+        int[] fill = start.clone();
+        for (int q = 0; q < n; q++) members[fill[closureIndex[q]]++] = q;
+
+        // The components each component has λ transitions into, each listed once.
+        afterStart = new int[numComponents + 1];
+        after = new int[16];
+        int[] seen = new int[numComponents];
+        int size = 0;
+        for (int c = 0; c < numComponents; c++) {
+            for (int i = start[c]; i < start[c + 1]; i++) {
+                for (int p : adjacency[members[i]]) {
+                    int d = closureIndex[p];
+                    if (d == c || seen[d] == c + 1) continue;
+                    seen[d] = c + 1;
+                    if (size == after.length) after = Arrays.copyOf(after, 2 * size);
+                    after[size++] = d;
+                }
+            }
+            afterStart[c + 1] = size;
+        }
+        after = Arrays.copyOf(after, size);
+
+        // Store the closures of the components, successors first, while they fit in a budget of ints linear in the
+        // size of the NFA. Each one is found by walking its component, stopping at stored successors.
+        closures = new int[numComponents][];
+        long budget = 16L * n + 1024 + size;
+        long[] bits = new long[(n + 63) >>> 6];
+        int[] states = new int[n];
+        int[] stack = new int[numComponents];
+        for (int c = 0; c < numComponents && budget > 0; c++) {
+            int count = addClosure(members[start[c]], bits, states, 0, stack);
+            for (int i = 0; i < count; i++) bits[states[i] >>> 6] = 0;
+            if (count > budget) break;
+            budget -= count;
+            closures[c] = Arrays.copyOf(states, count);
+            Arrays.sort(closures[c]);
+        }
+    }
+
+    /**
+     * Adds the λ-closure of p to a λ-closed set of states, by walking the components reachable from p's, and
+     * copying the closures stored for them instead of walking further.
+     * Every state added belongs to a component that is added whole, with everything after it, so the set stays
+     * λ-closed, and a component with a member in the set is never walked again.
+     * @param p A state
+     * @param bits The set, as a bitset
+     * @param added The states added are appended here, unless it is null
+     * @param size The number of states in added
+     * @param stack Scratch space for numClosures() components
+     * @return The number of states in added afterwards.
+     */
+    public int addClosure(int p, long[] bits, int[] added, int size, int[] stack) {
+        if ((bits[p >>> 6] & (1L << p)) != 0) return size;
+        int c = closureIndex[p];
+        if (closures[c] != null) return addStates(closures[c], bits, added, size);
+        int top = 0;
+        stack[top++] = c;
+        size = addStates(members, start[c], start[c + 1], bits, added, size);
+        while (top > 0) {
+            c = stack[--top];
+            for (int i = afterStart[c]; i < afterStart[c + 1]; i++) {
+                int d = after[i];
+                int first = members[start[d]];
+                if ((bits[first >>> 6] & (1L << first)) != 0) continue;
+                if (closures[d] != null) {
+                    size = addStates(closures[d], bits, added, size);
+                } else {
+                    size = addStates(members, start[d], start[d + 1], bits, added, size);
+                    stack[top++] = d;
                 }
             }
         }
-//        System.out.println("Start States: " + startStates + " given " + states);
+        return size;
+    }
+
+    private static int addStates(int[] states, long[] bits, int[] added, int size) {
+        for (int q : states) {
+            if ((bits[q >>> 6] & (1L << q)) != 0) continue;
+            bits[q >>> 6] |= 1L << q;
+            if (added != null) added[size++] = q;
+        }
+        return size;
+    }
+
+    private static int addStates(int[] states, int from, int to, long[] bits, int[] added, int size) {
+        for (int i = from; i < to; i++) {
+            int q = states[i];
+            bits[q >>> 6] |= 1L << q;
+            if (added != null) added[size++] = q;
+        }
+        return size;
+    }
+
+    private static int[] toArray(Set<Integer> set) {
+        if (set == null) return new int[0];
+        int[] arr = new int[set.size()];
+        int i = 0;
+        for (int q : set) arr[i++] = q;
+        Arrays.sort(arr);
+        return arr;
+    }
+
+    /**
+     * Closures that weren't stored up front are written out the first time they are asked for, so asking for the
+     * closures of many states can take memory quadratic in the size of the NFA. addClosure doesn't.
+     * @param q A state
+     * @return The λ-closure of q as a sorted array. The array is shared and must not be modified.
+     */
+    public synchronized int[] closure(int q) {
+        int c = closureIndex[q];
+        if (closures[c] == null) {
+            int[] states = new int[numStates()];
+            int size = addClosure(q, new long[(numStates() + 63) >>> 6], states, 0, new int[numClosures()]);
+            closures[c] = Arrays.copyOf(states, size);
+            Arrays.sort(closures[c]);
+        }
+        return closures[c];
+    }
+
+    /**
+     * @param q A state
+     * @return The λ-closure of q as a sorted array if it was stored up front, otherwise null. The array is shared
+     *         and must not be modified.
+     */
+    int[] storedClosure(int q) {
+        return closures[closureIndex[q]];
+    }
+
+    /**
+     * States in the same strongly connected component of the λ graph have the same closure.
+     * @param q A state
+     * @return An index in 0, 1, ..., numClosures() - 1 identifying the closure of q.
+     */
+    public int closureIndex(int q) {
+        return closureIndex[q];
+    }
+
+    /**
+     * @return The number of distinct closures.
+     */
+    public int numClosures() {
+        return start.length - 1;
+    }
+
+    /**
+     * The epsilon-free transitions: the states reached from q on a, before taking the closure of the result.
+     * Stepping a λ-closed set of states by these moves and closing each result gives delta.
+     * @param q A state
+     * @param a The index of the symbol in the alphabet.
+     * @return The states as an array. The array is shared and must not be modified.
+     */
+    public int[] moves(int q, int a) {
+        return moves[q * map.size() + a];
+    }
+
+    public Set<Integer> expandLambda(Set<Integer> states) {
+        // Expand out by lambda transitions.
+        long[] bits = new long[(numStates() + 63) >>> 6];
+        int[] added = new int[numStates()];
+        int[] stack = new int[numClosures()];
+        int size = 0;
+        for (int q : states) size = addClosure(q, bits, added, size, stack);
+        Set<Integer> startStates = new HashSet<>();
+        for (int i = 0; i < size; i++) startStates.add(added[i]);
         return startStates;
     }
 
     @Override
     public Set<Integer> of(int state, char a) {
-        Set<Integer> startStates = expandLambda(new HashSet<>(Arrays.asList(state)));
-
-        // Evaluate the transition
-        Set<Integer> result = new HashSet<>();
-        for (int q : startStates) {
-            Set<Integer> step = transitions.get(q).get(map.get(a));
-//            System.out.println("\tstep: " + step);
-            result.addAll(step == null ? EMPTY : step);
+        int index = map.get(a);
+        long[] bits = new long[(numStates() + 63) >>> 6];
+        int[] added = new int[numStates()];
+        int[] stack = new int[numClosures()];
+        int size = 0;
+        for (int q : expandLambda(Set.of(state))) {
+            for (int p : moves(q, index)) size = addClosure(p, bits, added, size, stack);
         }
-//        System.out.println("Initial Result: " + result);
-
-        // Add in possible lambda transitions
-        result.addAll(expandLambda(result));
-//        System.out.println("Final Result: " + result);
+        Set<Integer> result = new HashSet<>();
+        for (int i = 0; i < size; i++) result.add(added[i]);
         return result;
     }
 
@@ -0,0 +1,63 @@
+package toc.regular.nfa;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of NFA states, stored as a sorted int array with a precomputed hash.
+ * Used as the key for a DFA state during subset construction.
+ *
+ * @author Jon Bolin
+ */
+final class StateSet {
+
+    final int[] states;
+    private final int hash;
+
+    StateSet(int[] states) {
+        this.states = states;
+        this.hash = Arrays.hashCode(states);
+    }
+
+    /**
+     * @param bits A bitset of states
+     * @return The states in the bitset.
+     */
+    static StateSet of(long[] bits) {
+        int size = 0;
+        for (long w : bits) size += Long.bitCount(w);
+        int[] states = new int[size];
+        int i = 0;
+        for (int w = 0; w < bits.length; w++) {
+            long b = bits[w];
+            while (b != 0) {
+                states[i++] = (w << 6) + Long.numberOfTrailingZeros(b);
+                b &= b - 1;
+            }
+        }
+        return new StateSet(states);
+    }
+
+    /**
+     * Stores this set of states as a bitset.
+     * @param bits The bitset to store the states in. Its previous contents are discarded.
+     */
+    void toBits(long[] bits) {
+        Arrays.fill(bits, 0);
+        for (int q : states) bits[q >>> 6] |= 1L << q;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof StateSet && ((StateSet) other).hash == hash && Arrays.equals(((StateSet) other).states, states);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(states);
+    }
+}
@@ -0,0 +1,319 @@
+package toc.regular.nfa;
+
+import toc.regular.dfa.DFA;
+import toc.regular.dfa.DFATransitionFunction;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The subset construction of a DFA from an NFA.
+ * Every DFA state is a λ-closed set of NFA states, stored as a sorted run of ints in one shared pool, and the sets
+ * are interned in an open addressing hash table of state ids. DFA states are numbered in the order they are
+ * discovered and expanded in the same order, so the worklist is just the next id to expand.
+ * State 0 is the λ-closure of the NFA's initial state.
+ *
+ * The construction can also run on a ForkJoinPool. It then expands the states one breadth first level at a time:
+ * the states of a level are expanded in parallel while the intern table is only read, and the new states found
+ * are numbered afterwards in the order the sequential construction would have found them. Both give the same DFA.
+ *
+ * @author Jon Bolin
+ */
+public class SubsetConstruction {
+
+    // The number of states a parallel task expands before it stops splitting.
+    private static final int CHUNK = 64;
+
+    private final NFA nfa;
+    private final NFATransitionFunction δ;
+    private final int k;
+    private final boolean[] isFinal;
+
+    // The NFA states of DFA state q are sets[start[q]..start[q + 1]), in increasing order.
+    private int[] sets = new int[64];
+    private int[] start = new int[17];
+    private int[] hash = new int[16];
+    private boolean[] accepting = new boolean[16];
+    private int numStates;
+
+    // table[q * k + a] is the DFA state reached from q on the symbol with index a.
+    private int[] table;
+
+    // Open addressing table of DFA states: slots hold state + 1, or 0 if empty.
+    private int[] slots = new int[32];
+
+    /**
+     * Runs the subset construction.
+     * @param nfa The NFA to determinize
+     */
+    public SubsetConstruction(NFA nfa) {
+        this(nfa, null);
+    }
+
+    /**
+     * Runs the subset construction, expanding the states on the given pool.
+     * @param nfa The NFA to determinize
+     * @param threads The pool to expand states on, or null to expand them on this thread.
+     */
+    public SubsetConstruction(NFA nfa, ForkJoinPool threads) {
+        this.nfa = nfa;
+        this.δ = nfa.δ;
+        this.k = δ.map.size();
+        this.table = new int[16 * Math.max(k, 1)];
+        int n = δ.numStates();
+        this.isFinal = new boolean[n];
+        for (int f : nfa.F) isFinal[f] = true;
+
+        int[] initial = n > 0 ? δ.closure(0) : new int[0];
+        intern(initial, initial.length, hashOf(initial, initial.length));
+        if (threads == null || threads.getParallelism() == 1) {
+            expand();
+        } else {
+            expand(threads);
+        }
+        table = Arrays.copyOf(table, numStates * k);
+    }
+
+    /**
+     * Scratch space for collecting a set of NFA states.
+     */
+    private class Scratch {
+        final long[] bits = new long[(δ.numStates() + 63) >>> 6];
+        final int[] members = new int[Math.max(δ.numStates(), 1)];
+        final int[] stack = new int[δ.numClosures()];
+    }
+
+    private void expand() {
+        Scratch scratch = new Scratch();
+        for (int q = 0; q < numStates; q++) {
+            ensureTable(q + 1);
+            for (int a = 0; a < k; a++) {
+                int size = successor(q, a, scratch);
+                table[q * k + a] = intern(scratch.members, size, hashOf(scratch.members, size));
+            }
+        }
+    }
+
+    private void expand(ForkJoinPool threads) {
+        ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+        for (int lo = 0, hi; lo < numStates; lo = hi) {
+            hi = numStates;
+            ensureTable(hi);
+
+            // found maps each new set of NFA states to the first (state, symbol) pair it is reached on.
+            Map<StateSet, Long> found = new ConcurrentHashMap<>();
+            StateSet[] pending = new StateSet[(hi - lo) * k];
+            Level level = new Level(lo, lo, hi, found, pending, scratch);
+            if (hi - lo <= CHUNK) {
+                level.compute();
+            } else {
+                threads.invoke(level);
+            }
+
+            List<Map.Entry<StateSet, Long>> discovered = new ArrayList<>(found.entrySet());
+            discovered.sort(Map.Entry.comparingByValue());
+            for (Map.Entry<StateSet, Long> e : discovered) {
+                int[] states = e.getKey().states;
+                intern(states, states.length, e.getKey().hashCode());
+            }
+            for (int i = 0; i < pending.length; i++) {
+                if (pending[i] == null) continue;
+                int[] states = pending[i].states;
+                table[lo * k + i] = find(states, states.length, pending[i].hashCode());
+            }
+        }
+    }
+
+    /**
+     * Expands the states [from, to) of the level [lo, hi).
+     * Successors that are already interned go straight into the table; new ones are left pending.
+     */
+    @SuppressWarnings("serial")
+    private class Level extends RecursiveAction {
+
+        private final int lo, from, to;
+        private final Map<StateSet, Long> found;
+        private final StateSet[] pending;
+        private final ThreadLocal<Scratch> scratch;
+
+        Level(int lo, int from, int to, Map<StateSet, Long> found, StateSet[] pending, ThreadLocal<Scratch> scratch) {
+            this.lo = lo;
+            this.from = from;
+            this.to = to;
+            this.found = found;
+            this.pending = pending;
+            this.scratch = scratch;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Level(lo, from, mid, found, pending, scratch), new Level(lo, mid, to, found, pending, scratch));
+                return;
+            }
+            Scratch s = scratch.get();
+            for (int q = from; q < to; q++) {
+                for (int a = 0; a < k; a++) {
+                    int size = successor(q, a, s);
+                    int h = hashOf(s.members, size);
+                    int id = find(s.members, size, h);
+                    if (id >= 0) {
+                        table[q * k + a] = id;
+                    } else {
+                        StateSet key = new StateSet(Arrays.copyOf(s.members, size));
+                        found.merge(key, (long) q * k + a, Math::min);
+                        pending[(q - lo) * k + a] = key;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the λ-closed set of NFA states reached from DFA state q on the symbol with index a.
+     * @return The number of states, which are stored in increasing order in scratch.members.
+     */
+    private int successor(int q, int a, Scratch scratch) {
+        long[] bits = scratch.bits;
+        int[] members = scratch.members;
+        int size = 0;
+        for (int i = start[q]; i < start[q + 1]; i++) {
+            for (int p : δ.moves(sets[i], a)) size = δ.addClosure(p, bits, members, size, scratch.stack);
+        }
+        for (int i = 0; i < size; i++) bits[members[i] >>> 6] = 0;
+        Arrays.sort(members, 0, size);
+        return size;
+    }
+
+    private void ensureTable(int states) {
+        if (states * k > table.length) table = Arrays.copyOf(table, Math.max(2 * table.length, states * k));
+    }
+
+    /**
+     * @return The same hash as Arrays.hashCode, for the first size members.
+     */
+    private static int hashOf(int[] members, int size) {
+        int h = 1;
+        for (int i = 0; i < size; i++) h = 31 * h + members[i];
+        return h;
+    }
+
+    /**
+     * @param members NFA states, in increasing order
+     * @param size The number of NFA states
+     * @param h The hash of the NFA states
+     * @return The DFA state with the given NFA states, or -1 if there is none.
+     */
+    private int find(int[] members, int size, int h) {
+        int mask = slots.length - 1;
+        for (int slot = mix(h) & mask, id; (id = slots[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+            if (hash[id] == h && equals(id, members, size)) return id;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the DFA state with the given NFA states, adding it if it is new.
+     * @param members The NFA states, in increasing order
+     * @param size The number of NFA states
+     * @param h The hash of the NFA states
+     * @return The DFA state.
+     */
+    private int intern(int[] members, int size, int h) {
+        int mask = slots.length - 1;
+        int slot = mix(h) & mask;
+        for (int id; (id = slots[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+            if (hash[id] == h && equals(id, members, size)) return id;
+        }
+
+        int id = numStates++;
+        if (id == hash.length) {
+            hash = Arrays.copyOf(hash, 2 * id);
+            accepting = Arrays.copyOf(accepting, 2 * id);
+            start = Arrays.copyOf(start, 2 * id + 1);
+        }
+        int offset = start[id];
+        if (offset + size > sets.length) sets = Arrays.copyOf(sets, Math.max(2 * sets.length, offset + size));
+        System.arraycopy(members, 0, sets, offset, size);
+        start[id + 1] = offset + size;
+        hash[id] = h;
+        for (int i = 0; i < size; i++) {
+            if (isFinal[members[i]]) {
+                accepting[id] = true;
+                break;
+            }
+        }
+        slots[slot] = id + 1;
+        if (2 * numStates > slots.length) rehash();
+        return id;
+    }
+
+    private boolean equals(int id, int[] members, int size) {
+        if (start[id + 1] - start[id] != size) return false;
+        for (int i = 0, j = start[id]; i < size; i++, j++) {
+            if (sets[j] != members[i]) return false;
+        }
+        return true;
+    }
+
+    private void rehash() {
+        slots = new int[2 * slots.length];
+        int mask = slots.length - 1;
+        for (int id = 0; id < numStates; id++) {
+            int slot = mix(hash[id]) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return The number of DFA states.
+     */
+    public int numStates() {
+        return numStates;
+    }
+
+    /**
+     * @param q A DFA state
+     * @return The NFA states making up q, in increasing order.
+     */
+    public int[] states(int q) {
+        return Arrays.copyOfRange(sets, start[q], start[q + 1]);
+    }
+
+    /**
+     * @param q A DFA state
+     * @return true if q contains a final state of the NFA.
+     */
+    public boolean isAccepting(int q) {
+        return accepting[q];
+    }
+
+    /**
+     * @return The transition table of the DFA. Entry q * k + a is the state reached from q on the symbol with
+     *         index a, where k is the size of the alphabet.
+     */
+    public int[] table() {
+        return table.clone();
+    }
+
+    /**
+     * @return The DFA.
+     */
+    public DFA toDFA() {
+        Set<Integer> F = new HashSet<>();
+        for (int q = 0; q < numStates; q++) {
+            if (accepting[q]) F.add(q);
+        }
+        return new DFA(DFATransitionFunction.fromTable(table, numStates, nfa.δ.map), nfa.Σ, F);
+    }
+
+}